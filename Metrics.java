@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Metrics shared by the programs: phase timings and algorithm counters, summarized as JSON with
+// -metrics <file|-> and published as JDK Flight Recorder events for recordings started with
+// -XX:StartFlightRecording. Counters are striped LongAdders, so parallel engines can count without
+// contending. Every hot-path use is guarded by ENABLED, a static final the JIT folds to a constant,
+// so a run without -metrics compiles the instrumentation away entirely.
+final class Metrics {
+    // Set by a program's main from its -metrics flag, before anything touches this class; referring
+    // to this compile-time constant does not initialize the class.
+    static final String PROPERTY = "metrics.enabled";
+    static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+    private static final Map<String, LongAdder> PHASES = new LinkedHashMap<>();
+
+    // PaintFill
+    static final Counter DFS_CALLS = new Counter("PaintFill", "dfs.calls", false);
+    static final Counter DFS_MAX_DEPTH = new Counter("PaintFill", "dfs.maxDepth", true);
+    static final Counter FILL_SPANS = new Counter("PaintFill", "scanline.spans", false);
+    static final Counter CELLS_FILLED = new Counter("PaintFill", "cells.filled", false);
+    // NoOfWays; trie steps replace the startsWith comparisons of the original combine().
+    static final Counter MEMO_HITS = new Counter("NoOfWays", "memo.hits", false);
+    static final Counter MEMO_MISSES = new Counter("NoOfWays", "memo.misses", false);
+    static final Counter TRIE_STEPS = new Counter("NoOfWays", "trie.steps", false);
+    // ShortestCycle; a relaxation is an out-edge examined from a settled vertex.
+    static final Counter HEAP_POPS = new Counter("ShortestCycle", "heap.pops", false);
+    static final Counter RELAXATIONS = new Counter("ShortestCycle", "edge.relaxations", false);
+    // findtheOccurence; a probe is one comparison step of a binary search.
+    static final Counter PROBES = new Counter("findtheOccurence", "search.probes", false);
+
+    private Metrics() {
+    }
+
+    // A sum, or the largest value seen when it is a maximum.
+    static final class Counter {
+        final String program;
+        final String name;
+        private final LongAdder sum;
+        private final LongAccumulator maximum;
+
+        private Counter(String program, String name, boolean isMaximum) {
+            this.program = program;
+            this.name = name;
+            sum = isMaximum ? null : new LongAdder();
+            maximum = isMaximum ? new LongAccumulator(Math::max, 0) : null;
+            COUNTERS.add(this);
+        }
+
+        void increment() {
+            sum.increment();
+        }
+
+        void add(long value) {
+            sum.add(value);
+        }
+
+        void max(long value) {
+            maximum.accumulate(value);
+        }
+
+        long value() {
+            return sum != null ? sum.sum() : maximum.get();
+        }
+    }
+
+    @Name("algorithms.Phase")
+    @Label("Program Phase")
+    @Category("Algorithms")
+    @Description("Wall-clock time of one phase of a program run")
+    @StackTrace(false)
+    static final class PhaseEvent extends Event {
+        @Label("Program")
+        String program;
+        @Label("Phase")
+        String phase;
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Name("algorithms.Counter")
+    @Label("Algorithm Counter")
+    @Category("Algorithms")
+    @Description("Final value of an algorithm counter at the end of a program run")
+    @StackTrace(false)
+    static final class CounterEvent extends Event {
+        @Label("Program")
+        String program;
+        @Label("Counter")
+        String counter;
+        @Label("Value")
+        long value;
+    }
+
+    // Start of a phase: the current time, or 0 when metrics are disabled.
+    static long now() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Ends the phase started at start, adding its time to the phase's total, and returns the time the
+    // next phase starts from: after the event is committed, so that loading JFR on the first commit is
+    // not charged to any phase.
+    static long phase(String program, String phase, long start) {
+        if (!ENABLED) {
+            return 0;
+        }
+        long end = System.nanoTime();
+        synchronized (PHASES) {
+            PHASES.computeIfAbsent(phase, k -> new LongAdder()).add(end - start);
+        }
+        PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit()) {
+            event.program = program;
+            event.phase = phase;
+            event.nanos = end - start;
+            event.commit();
+        }
+        return System.nanoTime();
+    }
+
+    // Writes the phase totals and the program's counters as a JSON object to destination, or to
+    // standard output for "-", and commits a counter event for each counter.
+    static void writeSummary(String program, String destination) {
+        if (!ENABLED) {
+            return;
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"program\": \"").append(program).append("\",\n  \"phaseNanos\": {");
+        synchronized (PHASES) {
+            String separator = "\n";
+            for (Map.Entry<String, LongAdder> phase : PHASES.entrySet()) {
+                json.append(separator).append("    \"").append(phase.getKey()).append("\": ")
+                        .append(phase.getValue().sum());
+                separator = ",\n";
+            }
+        }
+        json.append("\n  },\n  \"counters\": {");
+        String separator = "\n";
+        for (Counter counter : COUNTERS) {
+            if (!counter.program.equals(program)) {
+                continue;
+            }
+            long value = counter.value();
+            json.append(separator).append("    \"").append(counter.name).append("\": ").append(value);
+            separator = ",\n";
+            CounterEvent event = new CounterEvent();
+            if (event.shouldCommit()) {
+                event.program = program;
+                event.counter = counter.name;
+                event.value = value;
+                event.commit();
+            }
+        }
+        json.append("\n  }\n}\n");
+
+        if (destination.equals("-")) {
+            System.out.print(json);
+            System.out.flush();
+            return;
+        }
+        try {
+            Files.writeString(Paths.get(destination), json);
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Could not write metrics to " + destination + ": " + e.getMessage());
+        }
+    }
+}
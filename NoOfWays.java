@@ -54,71 +54,541 @@ Memoization: Results of recursive calls (including those from the base case scen
 
 
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class NoOfWays {
 
-    // Method to find all combinations to form the target using words from the wordbank.
-    static List<List<String>> combine(String target, String[] wordBank, HashMap<String, List<List<String>>> memo) {
-        // Check if the result for this target has already been calculated and cached.
-        if (memo.containsKey(target)) {
-            return memo.get(target);
+    // Prefix trie over the word bank, built once, so that each position of the target enumerates
+    // exactly the words that match there by walking the target a character at a time, instead of
+    // calling startsWith for every word in the bank. Nodes live in parallel arrays and the children of
+    // a node form a sibling list, which keeps large dictionaries compact. Empty and repeated words are
+    // not stored.
+    static final class WordTrie {
+        final String[] words; // The distinct non-empty words, in bank order.
+        final int maxLength;
+        private char[] label = new char[64];
+        private int[] firstChild = new int[64];
+        private int[] nextSibling = new int[64];
+        private int[] wordIndex = new int[64]; // Index into words of the word ending at a node, or -1.
+        private int nodeCount = 1;
+
+        WordTrie(String[] wordBank) {
+            firstChild[0] = -1;
+            wordIndex[0] = -1;
+            List<String> distinct = new ArrayList<>();
+            int longest = 0;
+            for (String word : wordBank) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                int node = 0;
+                for (int k = 0; k < word.length(); k++) {
+                    int child = step(node, word.charAt(k));
+                    node = child >= 0 ? child : addChild(node, word.charAt(k));
+                }
+                if (wordIndex[node] < 0) {
+                    wordIndex[node] = distinct.size();
+                    distinct.add(word);
+                    longest = Math.max(longest, word.length());
+                }
+            }
+            words = distinct.toArray(new String[0]);
+            maxLength = longest;
+        }
+
+        private int addChild(int parent, char c) {
+            if (nodeCount == label.length) {
+                int capacity = 2 * nodeCount;
+                label = Arrays.copyOf(label, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                wordIndex = Arrays.copyOf(wordIndex, capacity);
+            }
+            int node = nodeCount++;
+            label[node] = c;
+            firstChild[node] = -1;
+            wordIndex[node] = -1;
+            nextSibling[node] = firstChild[parent];
+            firstChild[parent] = node;
+            return node;
+        }
+
+        // The child of node reached by c, or -1. The root is node 0.
+        int step(int node, char c) {
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                if (label[child] == c) {
+                    return child;
+                }
+            }
+            return -1;
+        }
+
+        // Number of step() calls of a walk over text from from that stopped at end: one per character
+        // consumed, plus the failed one when it stopped before the end of the text.
+        static int walkSteps(String text, int from, int end) {
+            return end - from + (end < text.length() ? 1 : 0);
+        }
+
+        // Index into words of the word that ends at node, or -1.
+        int wordAt(int node) {
+            return wordIndex[node];
         }
-        // Check for an empty word in the wordbank and handle edge cases.
-        if (wordBank.length == 1 && wordBank[0].isEmpty()) {
-            return new ArrayList<>(); // Return an empty list if wordbank is effectively empty.
+
+        // Fills matched with the indices of the words that occur in text at from, in bank order, and
+        // returns how many there are. matched must hold maxLength entries.
+        int matchesAt(String text, int from, int[] matched) {
+            int count = 0;
+            int k = from;
+            for (int node = 0; k < text.length() && (node = step(node, text.charAt(k))) >= 0; k++) {
+                if (wordIndex[node] >= 0) {
+                    matched[count++] = wordIndex[node];
+                }
+            }
+            if (Metrics.ENABLED) {
+                Metrics.TRIE_STEPS.add(walkSteps(text, from, k));
+            }
+            Arrays.sort(matched, 0, count);
+            return count;
         }
+    }
 
-        // Base case: if the target string is empty, return a list containing an empty list.
-        if (target.isEmpty()) {
-            List<List<String>> baseResult = new ArrayList<>();
-            baseResult.add(new ArrayList<>());
-            return baseResult;
+    // Method to find all combinations to form the target using words from the wordbank. Subproblems are
+    // the suffixes of the target, identified by their start offset, so the memo is an array indexed by
+    // offset rather than a map keyed by substrings. The search runs on an explicit stack, depth first
+    // from offset 0, so only the suffixes reachable from the start are solved and long targets cannot
+    // overflow the call stack.
+    @SuppressWarnings("unchecked")
+    static List<List<String>> combine(String target, WordTrie wordBank) {
+        // A wordbank without any words (such as a lone empty word) builds nothing.
+        if (wordBank.words.length == 0) {
+            return new ArrayList<>();
+        }
+        int n = target.length();
+        List<List<String>>[] memo = (List<List<String>>[]) new List<?>[n + 1];
+        boolean[] expanded = new boolean[n + 1];
+
+        // Base case: the empty suffix has exactly one construction, the empty list.
+        memo[n] = new ArrayList<>();
+        memo[n].add(new ArrayList<>());
+
+        int[] matched = new int[wordBank.maxLength];
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = 0;
+        long hits = 0; // Counters only reported with -metrics; dead code otherwise.
+        long misses = 0;
+        while (top > 0) {
+            int from = stack[top - 1];
+            if (memo[from] != null) {
+                top--; // Solved through another path since it was pushed.
+                hits++;
+                continue;
+            }
+            int matchCount = wordBank.matchesAt(target, from, matched);
+            if (!expanded[from]) {
+                // First visit: solve the suffixes after each matching word before this one. Offsets
+                // only grow along a construction, so none of them can be waiting below on the stack.
+                expanded[from] = true;
+                for (int m = 0; m < matchCount; m++) {
+                    int next = from + wordBank.words[matched[m]].length();
+                    if (memo[next] == null) {
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, 2 * top);
+                        }
+                        stack[top++] = next;
+                    } else {
+                        hits++;
+                    }
+                }
+                continue;
+            }
+
+            // Every suffix is solved: add each matching word to the beginning of its combinations.
+            top--;
+            List<List<String>> result = new ArrayList<>();
+            for (int m = 0; m < matchCount; m++) {
+                String word = wordBank.words[matched[m]];
+                for (List<String> suffixWay : memo[from + word.length()]) {
+                    List<String> targetWay = new ArrayList<>(suffixWay.size() + 1);
+                    targetWay.add(word);
+                    targetWay.addAll(suffixWay);
+                    result.add(targetWay);
+                }
+            }
+            memo[from] = result;
+            misses++;
+        }
+        if (Metrics.ENABLED) {
+            Metrics.MEMO_HITS.add(hits);
+            Metrics.MEMO_MISSES.add(misses);
         }
-        List<List<String>> result = new ArrayList<>();
+        return memo[0];
+    }
+
+    // The valid split points of a target as a DAG: an edge leaves offset i for every bank word that
+    // matches there and is followed by a suffix that can itself be completed, so every path from 0 to
+    // the end of the target is a construction and no path runs into a dead end. The DAG takes
+    // O(n * maxLength) space however many constructions there are; they are produced lazily, depth
+    // first, in the same order as combine() lists them.
+    static final class SplitDag {
+        private final WordTrie wordBank;
+        private final int length;
+        private final int[] edgeStart; // Edges of offset i are edgeWord[edgeStart[i] .. edgeStart[i + 1]).
+        private final int[] edgeWord;  // Index into wordBank.words, in bank order per offset.
 
-        // Iterate over each word in the word bank to see if it matches the start of the target string.
-        for (String word : wordBank) {
-            if (target.startsWith(word)) {
-                // Get the substring of the target after removing the word.
-                String con = target.substring(word.length());
-                // Recursive call to process the remainder of the target string.
-                List<List<String>> suffixWays = combine(con, wordBank, memo);
-                List<List<String>> targetWays = new ArrayList<>();
-                for (List<String> suffixWay : suffixWays) {
-                    List<String> targetWay = new ArrayList<>(List.of(word));
-                    targetWay.addAll(suffixWay); // Add the current word to the beginning of each combination found in the recursive call.
-                    targetWays.add(targetWay);
+        SplitDag(String target, WordTrie wordBank) {
+            this.wordBank = wordBank;
+            length = target.length();
+            boolean[] completes = new boolean[length + 1];
+            completes[length] = wordBank.words.length > 0; // A wordbank without words builds nothing.
+            int[] matched = new int[wordBank.maxLength];
+            int[][] edgesAt = new int[length][];
+            int edgeCount = 0;
+            for (int i = length - 1; i >= 0; i--) {
+                int matchCount = wordBank.matchesAt(target, i, matched);
+                int kept = 0;
+                for (int m = 0; m < matchCount; m++) {
+                    if (completes[i + wordBank.words[matched[m]].length()]) {
+                        matched[kept++] = matched[m];
+                    }
+                }
+                if (kept > 0) {
+                    completes[i] = true;
+                    edgesAt[i] = Arrays.copyOf(matched, kept);
+                    edgeCount += kept;
                 }
-                result.addAll(targetWays);
             }
+            edgeStart = new int[length + 2];
+            edgeWord = new int[edgeCount];
+            for (int i = 0, e = 0; i <= length; i++) {
+                edgeStart[i] = e;
+                if (i < length && edgesAt[i] != null) {
+                    System.arraycopy(edgesAt[i], 0, edgeWord, e, edgesAt[i].length);
+                    e += edgesAt[i].length;
+                }
+            }
+            edgeStart[length + 1] = edgeCount;
+            // The whole target has no construction: leave no path to the end.
+            if (!completes[0]) {
+                Arrays.fill(edgeStart, 0);
+            }
+        }
+
+        boolean isEmpty() {
+            return length == 0 ? wordBank.words.length == 0 : edgeStart[1] == 0;
+        }
+
+        Iterator<List<String>> iterator() {
+            return new Iterator<>() {
+                // The current path: offsets[d] is the offset at depth d and edge[d] the edge taken from it.
+                private final int[] offsets = new int[length + 1];
+                private final int[] edge = new int[length + 1];
+                private final String[] words = new String[length];
+                private int depth = isEmpty() ? -1 : 0;
+                private boolean ready = !isEmpty(); // The path at depth ends a construction not yet returned.
+
+                {
+                    if (ready) {
+                        descend();
+                    }
+                }
+
+                // Extends the path from its deepest offset along first edges until it reaches the end.
+                private void descend() {
+                    while (offsets[depth] < length) {
+                        int e = edgeStart[offsets[depth]];
+                        edge[depth] = e;
+                        words[depth] = wordBank.words[edgeWord[e]];
+                        offsets[depth + 1] = offsets[depth] + words[depth].length();
+                        depth++;
+                    }
+                }
+
+                // Moves to the next construction: back up to the deepest offset with an untried edge.
+                private void advance() {
+                    while (--depth >= 0) {
+                        int e = ++edge[depth];
+                        if (e < edgeStart[offsets[depth] + 1]) {
+                            words[depth] = wordBank.words[edgeWord[e]];
+                            offsets[depth + 1] = offsets[depth] + words[depth].length();
+                            depth++;
+                            descend();
+                            ready = true;
+                            return;
+                        }
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    if (!ready && depth >= 0) {
+                        advance();
+                    }
+                    return ready;
+                }
+
+                @Override
+                public List<String> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    ready = false;
+                    return List.of(Arrays.copyOf(words, depth));
+                }
+            };
         }
 
-        // Cache the result for this target to avoid recomputation in the future.
-        memo.put(target, result);
-        return result;
+        Stream<List<String>> stream() {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+    }
+
+    // Counts the constructions of target without materializing them. Bottom-up over target positions:
+    // ways[i] is the number of ways to build the suffix starting at i, and ways[n] = 1 for the empty
+    // suffix. The trie walk from each position visits only the words that match there. With a positive
+    // modulus the count is reduced modulo it; otherwise a count that overflows a long is recomputed
+    // exactly with BigInteger.
+    static BigInteger countWays(String target, WordTrie wordBank, long modulus) {
+        return countWays(target, wordBank, modulus, new long[target.length() + 1]);
+    }
+
+    // As above, with the DP table supplied by the caller; it must hold target.length() + 1 entries.
+    static BigInteger countWays(String target, WordTrie wordBank, long modulus, long[] ways) {
+        // Same edge case as combine(): a wordbank without any words builds nothing.
+        if (wordBank.words.length == 0) {
+            return BigInteger.ZERO;
+        }
+        try {
+            return BigInteger.valueOf(countWaysLong(target, wordBank, modulus, ways));
+        } catch (ArithmeticException overflow) {
+            return countWaysExact(target, wordBank);
+        }
     }
 
-    // Utility method to check if a string contains only valid characters.
+    private static long countWaysLong(String target, WordTrie wordBank, long modulus, long[] ways) {
+        int n = target.length();
+        ways[n] = 1;
+        long steps = 0; // Only reported with -metrics; dead code otherwise.
+        for (int i = n - 1; i >= 0; i--) {
+            long count = 0;
+            int k = i;
+            for (int node = 0; k < n && (node = wordBank.step(node, target.charAt(k))) >= 0; k++) {
+                if (wordBank.wordAt(node) < 0 || ways[k + 1] == 0) {
+                    continue;
+                }
+                if (modulus > 0) {
+                    count += ways[k + 1]; // Both terms are below the modulus, so one subtraction reduces the sum
+                    if (count >= modulus || count < 0) { // even when it wraps past Long.MAX_VALUE.
+                        count -= modulus;
+                    }
+                } else {
+                    count = Math.addExact(count, ways[k + 1]);
+                }
+            }
+            ways[i] = count;
+            steps += WordTrie.walkSteps(target, i, k);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.TRIE_STEPS.add(steps);
+        }
+        return modulus > 0 ? ways[0] % modulus : ways[0];
+    }
+
+    private static BigInteger countWaysExact(String target, WordTrie wordBank) {
+        int n = target.length();
+        BigInteger[] ways = new BigInteger[n + 1];
+        ways[n] = BigInteger.ONE;
+        long steps = 0; // Only reported with -metrics; dead code otherwise.
+        for (int i = n - 1; i >= 0; i--) {
+            BigInteger count = BigInteger.ZERO;
+            int k = i;
+            for (int node = 0; k < n && (node = wordBank.step(node, target.charAt(k))) >= 0; k++) {
+                if (wordBank.wordAt(node) >= 0) {
+                    count = count.add(ways[k + 1]);
+                }
+            }
+            ways[i] = count;
+            steps += WordTrie.walkSteps(target, i, k);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.TRIE_STEPS.add(steps);
+        }
+        return ways[0];
+    }
+
+    // Utility method to check if a string contains only valid characters: letters, digits and spaces.
+    // A plain loop, since String.matches compiles the pattern again on every call.
     private static boolean isValidString(String input) {
-        return input.matches("[a-zA-Z0-9 ]*"); // Regular expression for valid characters.
+        for (int k = 0; k < input.length(); k++) {
+            char c = input.charAt(k);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == ' ')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Converts a target to lowercase and removes its whitespace, as replaceAll("\\s+", "") would.
+    private static String normalizeTarget(String target) {
+        StringBuilder normalized = new StringBuilder(target.length());
+        for (int k = 0; k < target.length(); k++) {
+            char c = target.charAt(k);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r') {
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase();
+    }
+
+    // Per-worker buffers for batch mode, reused across targets.
+    static final class BatchScratch {
+        long[] ways = new long[64];
+        final StringBuilder line = new StringBuilder();
     }
 
+    // Solves one batch target into scratch.line: "target: count", followed in listing mode by up to
+    // limit constructions as " [ "w1", "w2" ]".
+    private static void solveBatchTarget(String rawTarget, WordTrie trie, boolean countOnly, long modulus,
+            long limit, BatchScratch scratch) {
+        StringBuilder line = scratch.line;
+        line.setLength(0);
+        String target = normalizeTarget(rawTarget);
+        line.append(target).append(": ");
+        if (!isValidString(target)) {
+            line.append("Target contains invalid characters.");
+            return;
+        }
+        if (scratch.ways.length <= target.length()) {
+            scratch.ways = new long[Math.max(target.length() + 1, 2 * scratch.ways.length)];
+        }
+        line.append(countWays(target, trie, countOnly ? modulus : 0, scratch.ways));
+        if (countOnly) {
+            return;
+        }
+        Iterator<List<String>> constructions = new SplitDag(target, trie).iterator();
+        for (long written = 0; written < limit && constructions.hasNext(); written++) {
+            line.append(" [ ");
+            List<String> combination = constructions.next();
+            for (int w = 0; w < combination.size(); w++) {
+                line.append(w == 0 ? "\"" : ", \"").append(combination.get(w)).append('"');
+            }
+            line.append(" ]");
+        }
+    }
+
+    // Batch mode: the word bank is compiled once and targets are read one per line from a file or
+    // stdin ("-"), skipping blank lines. Lines are processed in blocks by a fixed pool of workers that
+    // claim targets from a shared counter; results are written in input order, one line per target.
+    private static void runBatch(String targetsFile, WordTrie trie, boolean countOnly, long modulus, long limit,
+            int threads) throws IOException {
+        final int blockSize = 4096;
+        long batchStart = System.nanoTime();
+        long targets = 0;
+        PrintWriter out = new PrintWriter(new BufferedOutputStream(System.out, 1 << 16));
+        BatchScratch[] scratch = new BatchScratch[threads];
+        for (int t = 0; t < threads; t++) {
+            scratch[t] = new BatchScratch();
+        }
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try (InputStream in = targetsFile.equals("-") ? System.in : new FileInputStream(targetsFile);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in), 1 << 16)) {
+            String[] block = new String[blockSize];
+            String[] results = new String[blockSize];
+            Future<?>[] workers = new Future<?>[threads];
+            boolean more = true;
+            while (more) {
+                int count = 0;
+                String line;
+                while (count < blockSize && (line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        block[count++] = line;
+                    }
+                }
+                more = count == blockSize;
+                int blockCount = count;
+                AtomicInteger nextTarget = new AtomicInteger();
+                for (int t = 0; t < threads; t++) {
+                    BatchScratch own = scratch[t];
+                    Runnable worker = () -> {
+                        int k;
+                        while ((k = nextTarget.getAndIncrement()) < blockCount) {
+                            solveBatchTarget(block[k], trie, countOnly, modulus, limit, own);
+                            results[k] = own.line.toString();
+                        }
+                    };
+                    if (pool == null) {
+                        worker.run();
+                    } else {
+                        workers[t] = pool.submit(worker);
+                    }
+                }
+                if (pool != null) {
+                    for (Future<?> worker : workers) {
+                        worker.get();
+                    }
+                }
+                for (int k = 0; k < blockCount; k++) {
+                    out.println(results[k]);
+                }
+                targets += blockCount;
+            }
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("Targets file not found: " + targetsFile);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch failed: " + e.getCause(), e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            out.flush();
+        }
+        double seconds = (System.nanoTime() - batchStart) / 1_000_000_000.0;
+        System.out.println("Targets: " + targets);
+        System.out.println(String.format("Throughput: %.0f targets/s", targets / seconds));
+    }
+
+    // Flags that need no value; any other flag followed directly by another flag is dropped, so a
+    // missing -target value is still reported as a missing argument.
+    private static final Set<String> VALUELESS_FLAGS = Set.of("count", "stream");
+
     public static void main(String[] args) {
         long start = System.nanoTime(); // Start timing the execution.
 
         HashMap<String, String> parameters = new HashMap<>();
         List<String> wordBankList = new ArrayList<>();
         String key = null;
+        String metricsFile = null;
 
         // Parse command-line arguments.
         try {
             for (int i = 0; i < args.length; i++) {
-                if (args[i].startsWith("-")) {
+                if (args[i].startsWith("-") && args[i].length() > 1) { // A lone "-" is a value: stdin.
                     if (key != null && key.equals("wordbank")) {
                         parameters.put(key, String.join(" ", wordBankList));
                         wordBankList.clear();
+                    } else if (key != null && VALUELESS_FLAGS.contains(key)) {
+                        parameters.put(key, ""); // -count and -stream stand alone.
                     }
                     key = args[i].substring(1);
                 } else if (key != null) {
@@ -132,16 +602,68 @@ public class NoOfWays {
             }
             if (key != null && key.equals("wordbank")) {
                 parameters.put(key, String.join(" ", wordBankList));
+            } else if (key != null && VALUELESS_FLAGS.contains(key)) {
+                parameters.put(key, "");
+            }
+
+            // -metrics <file|-> writes phase timings and counters as JSON, "-" for standard output.
+            if (parameters.containsKey("metrics")) {
+                metricsFile = parameters.get("metrics");
+                System.setProperty(Metrics.PROPERTY, "true"); // Before Metrics is first used.
             }
+            long phaseStart = Metrics.now();
 
-            // Validate required parameters.
-            if (parameters.isEmpty() || !parameters.containsKey("target") || !parameters.containsKey("wordbank")) {
+            // Validate required parameters. -batch takes the targets from a file or stdin instead of -target.
+            boolean batch = parameters.containsKey("batch");
+            if (parameters.isEmpty() || !(batch || parameters.containsKey("target"))
+                    || !parameters.containsKey("wordbank")) {
                 throw new IllegalArgumentException(
-                        "Required arguments: -target <target_string> -wordbank <word1 word2 ...>");
+                        "Required arguments: -target <target_string> -wordbank <word1 word2 ...> [-count] [-modulus <m>]"
+                                + " [-stream] [-limit <n>], or -batch <file|-> in place of -target [-threads <n>], and [-metrics <file|->]");
+            }
+
+            // -count prints only the number of ways; -modulus m implies it and reduces the count modulo m.
+            boolean countOnly = parameters.containsKey("count") || parameters.containsKey("modulus");
+            long modulus = 0;
+            if (parameters.containsKey("modulus")) {
+                try {
+                    modulus = Long.parseLong(parameters.get("modulus"));
+                } catch (NumberFormatException e) {
+                    modulus = 0;
+                }
+                if (modulus <= 0) {
+                    throw new IllegalArgumentException("Modulus must be a positive integer.");
+                }
+            }
+            // -stream writes constructions as they are enumerated instead of building them all first;
+            // -limit n implies it and stops after the first n.
+            boolean stream = parameters.containsKey("stream") || parameters.containsKey("limit");
+            long limit = Long.MAX_VALUE;
+            if (parameters.containsKey("limit")) {
+                try {
+                    limit = Long.parseLong(parameters.get("limit"));
+                } catch (NumberFormatException e) {
+                    limit = -1;
+                }
+                if (limit < 0) {
+                    throw new IllegalArgumentException("Limit must be a non-negative integer.");
+                }
+            }
+
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (parameters.containsKey("threads")) {
+                try {
+                    threads = Integer.parseInt(parameters.get("threads"));
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads <= 0) {
+                    throw new IllegalArgumentException("Threads must be a positive integer.");
+                }
             }
 
             // Process the target string by removing spaces and converting to lowercase.
-            String target = parameters.get("target").toLowerCase().replaceAll("\\s+", "");
+            String target = batch ? "" : normalizeTarget(parameters.get("target"));
             // Split and process the wordbank by converting to lowercase.
             String[] wordBank = parameters.get("wordbank").toLowerCase().split(" ");
 
@@ -150,18 +672,67 @@ public class NoOfWays {
                 throw new IllegalArgumentException("Target contains invalid characters.");
             }
 
+            Set<String> seenWords = new HashSet<>();
             for (String word : wordBank) {
                 if (!isValidString(word)) {
                     throw new IllegalArgumentException("Word bank contains invalid characters.");
                 }
+                if (!word.isEmpty() && !seenWords.add(word)) {
+                    System.err.println("Warning: duplicate word \"" + word + "\" in the word bank is used once.");
+                }
+            }
+            WordTrie trie = new WordTrie(wordBank);
+
+            phaseStart = Metrics.phase("NoOfWays", "validate", phaseStart);
+
+            if (batch) {
+                runBatch(parameters.get("batch"), trie, countOnly, modulus, limit, threads);
+                Metrics.phase("NoOfWays", "compute", phaseStart);
+                return;
+            }
+
+            if (countOnly) {
+                BigInteger ways = countWays(target, trie, modulus);
+                phaseStart = Metrics.phase("NoOfWays", "compute", phaseStart);
+                System.out.println("Number of ways: " + ways + (modulus > 0 ? " (mod " + modulus + ")" : ""));
+                Metrics.phase("NoOfWays", "output", phaseStart);
+                long end = System.nanoTime();
+                double exeTime = (end - start) / 1_000_000_000.0;
+                System.out.println("Runtime: " + String.format("%.4f", exeTime) + " seconds");
+                return;
             }
 
-            // Initialize memoization storage.
-            HashMap<String, List<List<String>>> memo = new HashMap<>();
-            HashMap<String, Integer> memo1 = new HashMap<>();
+            if (stream) {
+                // The count comes from the counting DP, so the header is printed before anything is
+                // enumerated.
+                PrintWriter out = new PrintWriter(new BufferedOutputStream(System.out, 1 << 16));
+                BigInteger ways = countWays(target, trie, 0);
+                phaseStart = Metrics.phase("NoOfWays", "compute", phaseStart);
+                out.println("Number of ways: " + ways);
+                out.println("[");
+                StringBuilder line = new StringBuilder();
+                Iterator<List<String>> constructions = new SplitDag(target, trie).iterator();
+                for (long written = 0; written < limit && constructions.hasNext(); written++) {
+                    line.setLength(0);
+                    line.append("   [ ");
+                    List<String> combination = constructions.next();
+                    for (int w = 0; w < combination.size(); w++) {
+                        line.append(w == 0 ? "\"" : ", \"").append(combination.get(w)).append('"');
+                    }
+                    out.println(line.append(" ]"));
+                }
+                out.println("]");
+                long end = System.nanoTime();
+                double exeTime = (end - start) / 1_000_000_000.0;
+                out.println("Runtime: " + String.format("%.4f", exeTime) + " seconds");
+                out.flush();
+                Metrics.phase("NoOfWays", "output", phaseStart); // Enumeration included: it is lazy.
+                return;
+            }
 
             // Calculate all combinations using the combine method.
-            List<List<String>> combinations = combine(target, wordBank, memo);
+            List<List<String>> combinations = combine(target, trie);
+            phaseStart = Metrics.phase("NoOfWays", "compute", phaseStart);
             System.out.println("Number of ways: " + combinations.size());
             System.out.println("[");
             for (List<String> combination : combinations) {
@@ -175,10 +746,15 @@ public class NoOfWays {
             // Calculate execution time in seconds.
             double exeTime = (end - start) / 1_000_000_000.0;
             System.out.println("Runtime: " + String.format("%.4f", exeTime) + " seconds");
+            Metrics.phase("NoOfWays", "output", phaseStart);
 
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
             System.exit(1);
+        } finally {
+            if (metricsFile != null) {
+                Metrics.writeSummary("NoOfWays", metricsFile);
+            }
         }
     }
 }
@@ -1,111 +1,1621 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PaintFill {
     // Static variables to keep track of the number of updated cells and a matrix to mark updated cells
   
-    static private int cellCount = 0; 
-    static private boolean[][] updatedCellsMatrix;
+    static private long cellCount = 0; 
+    // Bitset of updated cells: bit i * updatedColumns + j is set once cell (i, j) has been filled.
+    static private long[] updatedCells;
+    static private int updatedColumns;
+    // Seed stack of the sequential scanline fill, kept between fills so repeated fills do not allocate.
+    static private final FillScratch fillScratch = new FillScratch();
+    // Most cells the byte grid of batch mode and the parallel fill can hold, one array element per
+    // cell; larger canvases need the packed grid of the single fill or -mmap.
+    static final int MAX_GRID_CELLS = Integer.MAX_VALUE - 8;
+    // Calls, current and deepest recursion depth of dfs, tracked only with -metrics and added to the
+    // counters once the fill is done.
+    static private long dfsCalls;
+    static private int dfsDepth;
+    static private int dfsMaxDepth;
+    // Atomic access to bitset words that two tiles of the parallel fill may share.
+    private static final VarHandle UPDATED_WORD = MethodHandles.arrayElementVarHandle(long[].class);
 
     // Method to check if a character is an allowed color
     private static boolean isAllowedCharacter(char color) {
-        String allowedChars = "RGBYWgX";
-        return allowedChars.indexOf(color) >= 0;
+        return color < PackedGrid.ENCODE.length && PackedGrid.ENCODE[color] >= 0;
     }
 
-    // Method to print the coordinates of cells that have been updated
-    private static void printUpdatedCellsMatrix() {
-        int count = 0; 
-        for (int i = 0; i < updatedCellsMatrix.length; i++) {
-            boolean rowUpdated = false; 
-            for (int j = 0; j < updatedCellsMatrix[i].length; j++) {
-                if (updatedCellsMatrix[i][j]) {
-                    if (cellCount - 1 == count) {
-                        System.out.print("(" + i + "," + j + ") ");
-                        break;
-                    } else { 
-                        System.out.print("(" + i + "," + j + "), ");
-                        count++;
-                        rowUpdated = true;
+    // Methods to mark a single updated cell or a run of updated cells in the same row.
+    private static void markUpdated(int i, int j) {
+        long index = (long) i * updatedColumns + j;
+        updatedCells[(int) (index >>> 6)] |= 1L << index;
+    }
+
+    // The first and last word of a span are updated atomically because the parallel fill may have
+    // another tile writing the rest of them; the words in between belong to this span alone.
+    private static void markUpdatedRange(int i, int fromColumn, int toColumn) {
+        long from = (long) i * updatedColumns + fromColumn;
+        long to = (long) i * updatedColumns + toColumn; // Inclusive.
+        int firstWord = (int) (from >>> 6);
+        int lastWord = (int) (to >>> 6);
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (firstWord == lastWord) {
+            UPDATED_WORD.getAndBitwiseOr(updatedCells, firstWord, firstMask & lastMask);
+            return;
+        }
+        UPDATED_WORD.getAndBitwiseOr(updatedCells, firstWord, firstMask);
+        for (int w = firstWord + 1; w < lastWord; w++) {
+            updatedCells[w] = -1L;
+        }
+        UPDATED_WORD.getAndBitwiseOr(updatedCells, lastWord, lastMask);
+    }
+
+    // Line separator of the cell printers, which write digits straight into a byte buffer with
+    // writeNumber() rather than building a String per cell.
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    // Method to print the coordinates of cells that have been updated. Walks the set bits of the
+    // bitset word by word, so untouched parts of the grid cost one word test per 64 cells.
+    private static void printUpdatedCellsMatrix(PrintStream out) {
+        byte[] text = new byte[48]; // "(row,column), " with two longs.
+        long count = 0;
+        long currentRow = -1;
+        boolean rowUpdated = false;
+        for (int w = 0; w < updatedCells.length; w++) {
+            long word = updatedCells[w];
+            while (word != 0) {
+                long index = ((long) w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                long i = index / updatedColumns;
+                long j = index % updatedColumns;
+                if (i != currentRow) {
+                    if (rowUpdated) {
+                        out.write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
                     }
+                    rowUpdated = false;
+                    currentRow = i;
+                }
+                int length = 0;
+                text[length++] = '(';
+                length = writeNumber(text, length, i);
+                text[length++] = ',';
+                length = writeNumber(text, length, j);
+                text[length++] = ')';
+                if (cellCount - 1 == count) {
+                    text[length++] = ' '; // The last cell ends the list without a comma.
+                } else {
+                    text[length++] = ',';
+                    text[length++] = ' ';
+                    count++;
+                    rowUpdated = true;
                 }
+                out.write(text, 0, length);
             }
-            if (rowUpdated) {
-                System.out.println(); 
+        }
+        if (rowUpdated) {
+            out.write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+        }
+    }
+
+    // Method to print the updated cells as run-length encoded spans, one line per row that has
+    // any, in the form "row: from-to from-to ..." with single cells printed as just the column.
+    private static void printUpdatedSpans(PrintStream out) {
+        byte[] text = new byte[48]; // " from-to" or "row:" with longs.
+        long currentRow = -1;
+        long spanStart = -1;
+        long spanEnd = -2;
+        for (int w = 0; w < updatedCells.length; w++) {
+            long word = updatedCells[w];
+            while (word != 0) {
+                long index = ((long) w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                long i = index / updatedColumns;
+                long j = index % updatedColumns;
+                if (i == currentRow && j == spanEnd + 1) {
+                    spanEnd = j; // Extends the current span.
+                    continue;
+                }
+                printSpan(out, text, spanStart, spanEnd);
+                if (i != currentRow) {
+                    if (currentRow >= 0) {
+                        out.write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+                    }
+                    int length = writeNumber(text, 0, i);
+                    text[length++] = ':';
+                    out.write(text, 0, length);
+                    currentRow = i;
+                }
+                spanStart = j;
+                spanEnd = j;
             }
         }
+        printSpan(out, text, spanStart, spanEnd);
+        if (currentRow >= 0) {
+            out.write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+        }
+    }
+
+    private static void printSpan(PrintStream out, byte[] text, long spanStart, long spanEnd) {
+        if (spanStart < 0) {
+            return;
+        }
+        int length = 0;
+        text[length++] = ' ';
+        length = writeNumber(text, length, spanStart);
+        if (spanStart != spanEnd) {
+            text[length++] = '-';
+            length = writeNumber(text, length, spanEnd);
+        }
+        out.write(text, 0, length);
     }
 
     // Depth-first search algorithm to fill the area of the matrix with the replacement color
     private static void dfs(ArrayList<ArrayList<Character>> matrix, int i, int j, char target_color,char replacement_color) {
+        if (Metrics.ENABLED) {
+            dfsCalls++;
+            dfsMaxDepth = Math.max(dfsMaxDepth, ++dfsDepth);
+        }
         // Base conditions to stop recursion
         if (i < 0 || j < 0 || i >= matrix.size() || j >= matrix.get(i).size() || matrix.get(i).get(j) != target_color) {
+            if (Metrics.ENABLED) {
+                dfsDepth--;
+            }
             return;
         }
         // Updating the color of the current cell
         matrix.get(i).set(j, replacement_color);
         cellCount++;
-        updatedCellsMatrix[i][j] = true;
+        markUpdated(i, j);
 
         // Recursive calls to adjacent cells
         dfs(matrix, i + 1, j, target_color, replacement_color);
         dfs(matrix, i - 1, j, target_color, replacement_color);
         dfs(matrix, i, j + 1, target_color, replacement_color);
         dfs(matrix, i, j - 1, target_color, replacement_color);
+        if (Metrics.ENABLED) {
+            dfsDepth--;
+        }
+    }
+
+    // Scanline flood fill over a flat row-major grid. Each step fills a whole horizontal span and
+    // pushes one seed per run of target-coloured cells in the rows above and below it, so the
+    // explicit stack holds spans rather than cells and nothing recurses. Fills the same cells as dfs,
+    // marks them in the updated-cells bitset when there is one and returns how many were filled.
+    private static int scanlineFill(byte[] grid, int rows, int cols, int startRow, int startColumn,
+            byte targetColor, byte replacementColor) {
+        fillScratch.top = 0;
+        fillScratch.push(startRow, startColumn);
+        return fillWithin(grid, cols, 0, 0, rows - 1, cols - 1, targetColor, replacementColor, fillScratch);
+    }
+
+    // Scanline fill from the seeds already on the scratch stack that never leaves the rectangle
+    // [top, bottom] x [left, right] of the grid.
+    private static int fillWithin(byte[] grid, int cols, int top, int left, int bottom, int right,
+            byte targetColor, byte replacementColor, FillScratch scratch) {
+        int filled = 0;
+        int spans = 0;
+        while (scratch.top > 0) {
+            int j = scratch.stack[--scratch.top];
+            int i = scratch.stack[--scratch.top];
+            int rowStart = i * cols;
+            if (grid[rowStart + j] != targetColor) {
+                continue; // Already filled through another seed.
+            }
+            // Extend the span left and right of the seed and fill it.
+            int spanLeft = j;
+            while (spanLeft > left && grid[rowStart + spanLeft - 1] == targetColor) {
+                spanLeft--;
+            }
+            int spanRight = j;
+            while (spanRight < right && grid[rowStart + spanRight + 1] == targetColor) {
+                spanRight++;
+            }
+            Arrays.fill(grid, rowStart + spanLeft, rowStart + spanRight + 1, replacementColor);
+            if (updatedCells != null) {
+                markUpdatedRange(i, spanLeft, spanRight);
+            }
+            filled += spanRight - spanLeft + 1;
+            spans++;
+
+            // Seed every run of target-coloured cells touching the span in the neighbouring rows.
+            for (int neighbour = i - 1; neighbour <= i + 1; neighbour += 2) {
+                if (neighbour < top || neighbour > bottom) {
+                    continue;
+                }
+                int neighbourStart = neighbour * cols;
+                boolean inRun = false;
+                for (int k = spanLeft; k <= spanRight; k++) {
+                    boolean target = grid[neighbourStart + k] == targetColor;
+                    if (target && !inRun) {
+                        scratch.push(neighbour, k);
+                    }
+                    inRun = target;
+                }
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.FILL_SPANS.add(spans);
+            Metrics.CELLS_FILLED.add(filled);
+        }
+        return filled;
+    }
+
+    // Growable stack of (row, column) seeds, plus the per-tile label buffers of the parallel fill.
+    static final class FillScratch {
+        int[] stack = new int[64];
+        int top;
+        int[] labels = new int[0];
+        int[] labelNode = new int[0];
+
+        void push(int row, int column) {
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = row;
+            stack[top++] = column;
+        }
+    }
+
+    // Canvas packed at 3 bits per cell, 21 cells to a long so no cell straddles two words. The seven
+    // allowed colours are encoded through lookup tables, which makes a cell cost about 3 bits
+    // instead of a reference and a Character per cell, and lets the grid hold more cells than a
+    // Java array has indices.
+    static final class PackedGrid {
+        static final int CELLS_PER_WORD = 21;
+        static final char[] DECODE = { 'R', 'G', 'B', 'Y', 'W', 'g', 'X' };
+        static final byte[] ENCODE = new byte[128]; // -1 for characters outside the palette.
+        private static final long[] REPEATED = new long[DECODE.length]; // A code in every slot of a word.
+        static {
+            Arrays.fill(ENCODE, (byte) -1);
+            for (int code = 0; code < DECODE.length; code++) {
+                ENCODE[DECODE[code]] = (byte) code;
+                for (int slot = 0; slot < CELLS_PER_WORD; slot++) {
+                    REPEATED[code] |= (long) code << (3 * slot);
+                }
+            }
+        }
+
+        private final long[] words;
+
+        PackedGrid(long cells) {
+            words = new long[(int) ((cells + CELLS_PER_WORD - 1) / CELLS_PER_WORD)];
+        }
+
+        int get(long cell) {
+            return (int) (words[(int) (cell / CELLS_PER_WORD)] >>> (3 * (cell % CELLS_PER_WORD))) & 7;
+        }
+
+        void set(long cell, int code) {
+            int w = (int) (cell / CELLS_PER_WORD);
+            int shift = (int) (3 * (cell % CELLS_PER_WORD));
+            words[w] = words[w] & ~(7L << shift) | (long) code << shift;
+        }
+
+        // Sets cells from (inclusive) to to (exclusive) to code, a whole word at a time where possible.
+        void fill(long from, long to, int code) {
+            while (from < to) {
+                int w = (int) (from / CELLS_PER_WORD);
+                long wordStart = (long) w * CELLS_PER_WORD;
+                int first = (int) (from - wordStart);
+                int last = (int) (Math.min(to, wordStart + CELLS_PER_WORD) - wordStart); // Exclusive.
+                if (first == 0 && last == CELLS_PER_WORD) {
+                    words[w] = REPEATED[code];
+                } else {
+                    long mask = ((1L << (3 * last)) - 1) & ~((1L << (3 * first)) - 1);
+                    words[w] = words[w] & ~mask | REPEATED[code] & mask;
+                }
+                from = wordStart + last;
+            }
+        }
+
+        // Writes the colours of count cells starting at firstCell to every other slot of text.
+        void decodeRow(long firstCell, int count, char[] text) {
+            int w = (int) (firstCell / CELLS_PER_WORD);
+            int slot = (int) (firstCell % CELLS_PER_WORD);
+            long word = words[w] >>> (3 * slot);
+            for (int j = 0; j < count; j++) {
+                if (slot == CELLS_PER_WORD) {
+                    word = words[++w];
+                    slot = 0;
+                }
+                text[2 * j] = DECODE[(int) word & 7];
+                word >>>= 3;
+                slot++;
+            }
+        }
+    }
+
+    // The scanline fill of fillWithin() over a packed grid, for the whole grid.
+    private static long packedScanlineFill(PackedGrid grid, int rows, int cols, int startRow, int startColumn,
+            int targetCode, int replacementCode) {
+        FillScratch scratch = fillScratch;
+        scratch.top = 0;
+        scratch.push(startRow, startColumn);
+        long filled = 0;
+        long spans = 0;
+        while (scratch.top > 0) {
+            int j = scratch.stack[--scratch.top];
+            int i = scratch.stack[--scratch.top];
+            long rowStart = (long) i * cols;
+            if (grid.get(rowStart + j) != targetCode) {
+                continue; // Already filled through another seed.
+            }
+            int spanLeft = j;
+            while (spanLeft > 0 && grid.get(rowStart + spanLeft - 1) == targetCode) {
+                spanLeft--;
+            }
+            int spanRight = j;
+            while (spanRight < cols - 1 && grid.get(rowStart + spanRight + 1) == targetCode) {
+                spanRight++;
+            }
+            grid.fill(rowStart + spanLeft, rowStart + spanRight + 1, replacementCode);
+            if (updatedCells != null) {
+                markUpdatedRange(i, spanLeft, spanRight);
+            }
+            filled += spanRight - spanLeft + 1;
+            spans++;
+
+            for (int neighbour = i - 1; neighbour <= i + 1; neighbour += 2) {
+                if (neighbour < 0 || neighbour >= rows) {
+                    continue;
+                }
+                long neighbourStart = (long) neighbour * cols;
+                boolean inRun = false;
+                for (int k = spanLeft; k <= spanRight; k++) {
+                    boolean target = grid.get(neighbourStart + k) == targetCode;
+                    if (target && !inRun) {
+                        scratch.push(neighbour, k);
+                    }
+                    inRun = target;
+                }
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.FILL_SPANS.add(spans);
+            Metrics.CELLS_FILLED.add(filled);
+        }
+        return filled;
+    }
+
+    // Canvas file memory-mapped in chunks, for canvases larger than the heap. The trailer (start
+    // node and colour) is read from the end of the file first, then one byte-level pass classifies
+    // every byte of the grid through a 256-entry table, checking the palette and the row lengths and
+    // recording where each row starts, so rows may end in "\n", "\r\n" or "\r" as with Scanner.
+    // Cells are read, and with -inplace written, straight through the mapping; only the row offsets
+    // and the bitset of updated cells live on the heap.
+    static final class MappedCanvas implements AutoCloseable {
+        static final long CHUNK_SIZE = 1L << 30;
+        private static final byte INVALID = -1; // Byte classes below the palette codes.
+        private static final byte LINE_FEED = -2;
+        private static final byte CARRIAGE_RETURN = -3;
+        private static final byte[] BYTE_CLASS = new byte[256];
+        static {
+            Arrays.fill(BYTE_CLASS, INVALID);
+            for (int code = 0; code < PackedGrid.DECODE.length; code++) {
+                BYTE_CLASS[PackedGrid.DECODE[code]] = (byte) code;
+            }
+            BYTE_CLASS['\n'] = LINE_FEED;
+            BYTE_CLASS['\r'] = CARRIAGE_RETURN;
+        }
+
+        private final FileChannel channel;
+        private final MappedByteBuffer[] chunks;
+        private final long size;
+        String startNodeInfo; // The trailer, or null when the file has fewer than four lines.
+        String replacementColorInfo;
+        private long gridEnd; // The grid is the bytes before the trailer.
+        long[] rowStart = new long[16];
+        int rows;
+        int cols;
+        boolean inconsistentRowLength;
+        boolean invalidColorDetected;
+
+        MappedCanvas(String fileName, boolean writable) throws IOException {
+            channel = writable
+                    ? FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+            size = channel.size();
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int c = 0; c < chunks.length; c++) {
+                long offset = c * CHUNK_SIZE;
+                chunks[c] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                        offset, Math.min(CHUNK_SIZE, size - offset));
+            }
+            readTrailer();
+        }
+
+        byte get(long offset) {
+            return chunks[(int) (offset / CHUNK_SIZE)].get((int) (offset % CHUNK_SIZE));
+        }
+
+        void put(long offset, byte value) {
+            chunks[(int) (offset / CHUNK_SIZE)].put((int) (offset % CHUNK_SIZE), value);
+        }
+
+        private boolean isLineEnd(long offset) {
+            byte b = get(offset);
+            return b == '\n' || b == '\r';
+        }
+
+        // Start of the line whose text ends at end.
+        private long lineStart(long end) {
+            while (end > 0 && !isLineEnd(end - 1)) {
+                end--;
+            }
+            return end;
+        }
+
+        // End of the text of the line whose terminator ends at terminatorEnd.
+        private long textEnd(long terminatorEnd) {
+            if (get(terminatorEnd - 1) == '\n' && terminatorEnd >= 2 && get(terminatorEnd - 2) == '\r') {
+                return terminatorEnd - 2;
+            }
+            return terminatorEnd - 1;
+        }
+
+        // Reads the last two lines as the start node and the colour, and requires at least two
+        // lines of grid before them, as the line-based reader does.
+        private void readTrailer() {
+            long colorEnd = size > 0 && isLineEnd(size - 1) ? textEnd(size) : size;
+            long colorStart = lineStart(colorEnd);
+            if (colorStart == 0) {
+                return;
+            }
+            long startNodeEnd = textEnd(colorStart);
+            long startNodeStart = lineStart(startNodeEnd);
+            if (startNodeStart == 0 || lineStart(textEnd(startNodeStart)) == 0) {
+                return;
+            }
+            startNodeInfo = text(startNodeStart, startNodeEnd);
+            replacementColorInfo = text(colorStart, colorEnd);
+            gridEnd = startNodeStart;
+        }
+
+        private String text(long from, long to) {
+            byte[] bytes = new byte[(int) (to - from)];
+            for (int k = 0; k < bytes.length; k++) {
+                bytes[k] = get(from + k);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // The single pass over the grid bytes. Stops after the first row whose length differs from
+        // the first row's, like the line-based reader; bytes outside ASCII are invalid colours.
+        void scanGrid() {
+            long rowBegin = 0;
+            int column = 0;
+            boolean afterCarriageReturn = false;
+            for (int c = 0; c < chunks.length; c++) {
+                MappedByteBuffer chunk = chunks[c];
+                long chunkStart = c * CHUNK_SIZE;
+                int limit = (int) Math.min(chunk.limit(), gridEnd - chunkStart);
+                for (int k = 0; k < limit; k++) {
+                    byte kind = BYTE_CLASS[chunk.get(k) & 0xFF];
+                    if (kind >= 0 || kind == INVALID) {
+                        invalidColorDetected |= kind == INVALID;
+                        column++;
+                        afterCarriageReturn = false;
+                        continue;
+                    }
+                    if (kind == LINE_FEED && afterCarriageReturn) {
+                        afterCarriageReturn = false; // Second half of "\r\n".
+                        rowBegin++;
+                        continue;
+                    }
+                    afterCarriageReturn = kind == CARRIAGE_RETURN;
+                    if (rows == 0) {
+                        cols = column;
+                    } else if (column != cols) {
+                        inconsistentRowLength = true;
+                        return;
+                    }
+                    if (rows == rowStart.length) {
+                        rowStart = Arrays.copyOf(rowStart, rows * 2);
+                    }
+                    rowStart[rows++] = rowBegin;
+                    rowBegin = chunkStart + k + 1;
+                    column = 0;
+                }
+            }
+        }
+
+        // Flushes the cells written through a writable mapping to the file.
+        void force() {
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
     }
 
+    // The scanline fill of fillWithin() over a mapped canvas, for the whole grid. Filled cells are
+    // marked in the updated-cells bitset, which also keeps a read-only canvas from being filled
+    // twice; with inPlace they are written to the file as well.
+    private static long mappedScanlineFill(MappedCanvas canvas, int startRow, int startColumn,
+            byte targetColor, byte replacementColor, boolean inPlace) {
+        int rows = canvas.rows;
+        int cols = canvas.cols;
+        long[] rowStart = canvas.rowStart;
+        FillScratch scratch = fillScratch;
+        scratch.top = 0;
+        scratch.push(startRow, startColumn);
+        long filled = 0;
+        long spans = 0;
+        while (scratch.top > 0) {
+            int j = scratch.stack[--scratch.top];
+            int i = scratch.stack[--scratch.top];
+            if (!isMappedTarget(canvas, i, j, targetColor)) {
+                continue; // Already filled through another seed.
+            }
+            int spanLeft = j;
+            while (spanLeft > 0 && isMappedTarget(canvas, i, spanLeft - 1, targetColor)) {
+                spanLeft--;
+            }
+            int spanRight = j;
+            while (spanRight < cols - 1 && isMappedTarget(canvas, i, spanRight + 1, targetColor)) {
+                spanRight++;
+            }
+            if (inPlace) {
+                for (int k = spanLeft; k <= spanRight; k++) {
+                    canvas.put(rowStart[i] + k, replacementColor);
+                }
+            }
+            markUpdatedRange(i, spanLeft, spanRight);
+            filled += spanRight - spanLeft + 1;
+            spans++;
+
+            for (int neighbour = i - 1; neighbour <= i + 1; neighbour += 2) {
+                if (neighbour < 0 || neighbour >= rows) {
+                    continue;
+                }
+                boolean inRun = false;
+                for (int k = spanLeft; k <= spanRight; k++) {
+                    boolean target = isMappedTarget(canvas, neighbour, k, targetColor);
+                    if (target && !inRun) {
+                        scratch.push(neighbour, k);
+                    }
+                    inRun = target;
+                }
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.FILL_SPANS.add(spans);
+            Metrics.CELLS_FILLED.add(filled);
+        }
+        return filled;
+    }
+
+    private static boolean isMappedTarget(MappedCanvas canvas, int i, int j, byte targetColor) {
+        return canvas.get(canvas.rowStart[i] + j) == targetColor && !isUpdated(i, j);
+    }
+
+    private static boolean isUpdated(int i, int j) {
+        long index = (long) i * updatedColumns + j;
+        return (updatedCells[(int) (index >>> 6)] & 1L << index) != 0;
+    }
+
+    // The -mmap path of main: validates and fills the memory-mapped canvas file and prints the same
+    // output as the line-based path. With inPlace the filled canvas is also written back to the
+    // file. Returns false when main should end without printing the run time, as it does when
+    // there is nothing to fill.
+    private static boolean runMapped(String fileName, boolean inPlace, boolean printSpans) {
+        long phaseStart = Metrics.now();
+        try (MappedCanvas canvas = new MappedCanvas(fileName, inPlace)) {
+            if (canvas.startNodeInfo == null) {
+                System.out.println("Input file does not contain enough information.");
+                return false;
+            }
+            phaseStart = Metrics.phase("PaintFill", "parse", phaseStart);
+
+            List<String> errorMessages = new ArrayList<>();
+            canvas.scanGrid();
+            if (canvas.inconsistentRowLength) {
+                errorMessages.add("Inconsistent row length detected. All rows must have the same number of columns.");
+            }
+            if (canvas.invalidColorDetected) {
+                errorMessages.add("Invalid color in matrix. Only R,G,B,Y,W,g,X are allowed.");
+            }
+            int rowCount = canvas.rows;
+            int expectedLength = canvas.cols;
+            String[] startNodeInfo = canvas.startNodeInfo.split(",");
+            String replacementColorInfo = canvas.replacementColorInfo;
+            if (startNodeInfo.length != 2) {
+                errorMessages.add("Invalid start node format. Expected format: row,column");
+            } else {
+                try {
+                    int startRow = Integer.parseInt(startNodeInfo[0]);
+                    int startColumn = Integer.parseInt(startNodeInfo[1]);
+
+                    if (startRow < 0 || startRow >= rowCount || startColumn < 0 || startColumn >= expectedLength) {
+                        errorMessages.add("Start node (" + startRow + "," + startColumn
+                                + ") is outside the matrix bounds.");
+                    } else if (replacementColorInfo.length() != 1 || !isAllowedCharacter(replacementColorInfo.charAt(0))) {
+                        errorMessages.add("Invalid replacement color. Only R,G,B,Y,W,g,X are allowed.");
+                    } else if (errorMessages.isEmpty()) {
+                        byte replacementColor = (byte) replacementColorInfo.charAt(0);
+                        byte targetColor = canvas.get(canvas.rowStart[startRow] + startColumn);
+                        if (replacementColor == targetColor) {
+                            System.out.println("Target node and replacement color are same so no changes required");
+                            return false;
+                        }
+                        updatedColumns = expectedLength;
+                        updatedCells = new long[(int) (((long) rowCount * expectedLength + 63) >>> 6)];
+                        phaseStart = Metrics.phase("PaintFill", "validate", phaseStart);
+
+                        cellCount = mappedScanlineFill(canvas, startRow, startColumn, targetColor, replacementColor,
+                                inPlace);
+                        if (inPlace) {
+                            canvas.force();
+                        }
+                        phaseStart = Metrics.phase("PaintFill", "compute", phaseStart);
+
+                        PrintStream stream = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+                        PrintWriter out = new PrintWriter(stream);
+                        out.println("Modified Matrix:");
+                        char[] rowText = new char[2 * expectedLength];
+                        Arrays.fill(rowText, ' ');
+                        for (int i = 0; i < rowCount; i++) {
+                            long rowStart = canvas.rowStart[i];
+                            for (int j = 0; j < expectedLength; j++) {
+                                rowText[2 * j] = (char) (isUpdated(i, j) ? replacementColor : canvas.get(rowStart + j));
+                            }
+                            out.println(rowText);
+                        }
+                        if (printSpans) {
+                            out.println("Spans of cell locations modified:");
+                            out.flush();
+                            printUpdatedSpans(stream);
+                        } else {
+                            out.println("List of cell locations modified:");
+                            out.flush();
+                            printUpdatedCellsMatrix(stream);
+                        }
+                        stream.flush();
+                        System.out.println("Total cells updated: " + cellCount);
+                        Metrics.phase("PaintFill", "output", phaseStart);
+                    }
+                } catch (NumberFormatException e) {
+                    errorMessages.add("Invalid start node format. Expected format: row,column");
+                }
+            }
+
+            for (String msg : errorMessages) {
+                System.out.println(msg);
+            }
+        } catch (NoSuchFileException e) {
+            System.out.println("File not found: " + new File(fileName).getAbsolutePath());
+        } catch (IOException e) {
+            System.out.println("Could not map " + new File(fileName).getAbsolutePath() + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    // Tiled flood fill on a fork-join pool, producing exactly the cells of the sequential fill.
+    //   1. Every tile labels the target-coloured components inside it and gives each component that
+    //      reaches the tile border a node in a shared union-find.
+    //   2. Every tile unions the nodes on its right and bottom borders with the facing border cells
+    //      of the neighbouring tiles, using a lock-free union-find over an AtomicIntegerArray.
+    //   3. Every tile fills, within its own bounds, the components whose node is in the same set as
+    //      the start cell's component, seeding from their border cells.
+    // Tiles only ever read and write their own cells, so phases 1 and 3 need no synchronisation.
+    static final class ParallelFill {
+        static final int TILE_SIZE = 512; // A multiple of 64, so most bitset words have one writer.
+
+        private final byte[] grid;
+        private final int rows;
+        private final int cols;
+        private final int tileRows;
+        private final int tileCols;
+        private final int perimeter; // Border slots reserved per tile; node ids are tile * perimeter + k.
+        private final int[] borderNodes; // Node of each border cell: top, bottom, left, right edges.
+        private final AtomicIntegerArray parent;
+        private final ThreadLocal<FillScratch> scratch = ThreadLocal.withInitial(FillScratch::new);
+        private byte targetColor;
+        private byte replacementColor;
+        private int startRow;
+        private int startColumn;
+        private volatile int startNode;
+        private int startRoot;
+
+        ParallelFill(byte[] grid, int rows, int cols) {
+            this.grid = grid;
+            this.rows = rows;
+            this.cols = cols;
+            tileRows = (rows + TILE_SIZE - 1) / TILE_SIZE;
+            tileCols = (cols + TILE_SIZE - 1) / TILE_SIZE;
+            perimeter = 4 * TILE_SIZE;
+            borderNodes = new int[tileRows * tileCols * perimeter];
+            parent = new AtomicIntegerArray(borderNodes.length);
+        }
+
+        int fill(int startRow, int startColumn, byte replacementColor, ForkJoinPool pool) {
+            this.targetColor = grid[startRow * cols + startColumn];
+            this.replacementColor = replacementColor;
+            this.startRow = startRow;
+            this.startColumn = startColumn;
+            if (targetColor == replacementColor) {
+                return 0;
+            }
+            startNode = -1;
+            pool.invoke(new Phase(1, 0, tileRows * tileCols, null));
+            pool.invoke(new Phase(2, 0, tileRows * tileCols, null));
+            startRoot = startNode < 0 ? -1 : find(startNode);
+            AtomicLong filled = new AtomicLong();
+            pool.invoke(new Phase(3, 0, tileRows * tileCols, filled));
+            return (int) filled.get();
+        }
+
+        // Runs one phase over a range of tiles, splitting the range until it is a single tile.
+        private final class Phase extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+            private final int phase;
+            private final int from;
+            private final int to;
+            private final AtomicLong filled;
+
+            Phase(int phase, int from, int to, AtomicLong filled) {
+                this.phase = phase;
+                this.from = from;
+                this.to = to;
+                this.filled = filled;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > 1) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new Phase(phase, from, mid, filled), new Phase(phase, mid, to, filled));
+                } else if (phase == 1) {
+                    labelTile(from);
+                } else if (phase == 2) {
+                    joinTile(from);
+                } else {
+                    filled.addAndGet(fillTile(from));
+                }
+            }
+        }
+
+        private void labelTile(int tile) {
+            int top = tile / tileCols * TILE_SIZE;
+            int left = tile % tileCols * TILE_SIZE;
+            int height = Math.min(TILE_SIZE, rows - top);
+            int width = Math.min(TILE_SIZE, cols - left);
+            FillScratch s = scratch.get();
+            if (s.labels.length < height * width) {
+                s.labels = new int[TILE_SIZE * TILE_SIZE];
+                s.labelNode = new int[TILE_SIZE * TILE_SIZE + 1];
+            }
+            int[] labels = s.labels;
+            Arrays.fill(labels, 0, height * width, 0);
+
+            // Label the target-coloured components of the tile.
+            int labelCount = 0;
+            for (int i = 0; i < height; i++) {
+                for (int j = 0; j < width; j++) {
+                    if (labels[i * width + j] != 0 || grid[(top + i) * cols + left + j] != targetColor) {
+                        continue;
+                    }
+                    int label = ++labelCount;
+                    s.top = 0;
+                    s.push(i, j);
+                    while (s.top > 0) { // Scanline fill of the labels, as in fillWithin().
+                        int x = s.stack[--s.top];
+                        int y = s.stack[--s.top];
+                        int row = y * width;
+                        int gridRow = (top + y) * cols + left;
+                        if (labels[row + x] != 0) {
+                            continue;
+                        }
+                        int spanLeft = x;
+                        while (spanLeft > 0 && labels[row + spanLeft - 1] == 0
+                                && grid[gridRow + spanLeft - 1] == targetColor) {
+                            spanLeft--;
+                        }
+                        int spanRight = x;
+                        while (spanRight < width - 1 && labels[row + spanRight + 1] == 0
+                                && grid[gridRow + spanRight + 1] == targetColor) {
+                            spanRight++;
+                        }
+                        Arrays.fill(labels, row + spanLeft, row + spanRight + 1, label);
+                        for (int ny = y - 1; ny <= y + 1; ny += 2) {
+                            if (ny < 0 || ny >= height) {
+                                continue;
+                            }
+                            boolean inRun = false;
+                            for (int k = spanLeft; k <= spanRight; k++) {
+                                boolean open = labels[ny * width + k] == 0
+                                        && grid[(top + ny) * cols + left + k] == targetColor;
+                                if (open && !inRun) {
+                                    s.push(ny, k);
+                                }
+                                inRun = open;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Give each component that reaches the border a node and record it per border cell.
+            int[] labelNode = s.labelNode;
+            Arrays.fill(labelNode, 0, labelCount + 1, -1);
+            int base = tile * perimeter;
+            int nodes = 0;
+            for (int p = 0; p < 2 * width + 2 * height; p++) {
+                int i = p < width ? 0 : p < 2 * width ? height - 1 : p - 2 * width < height ? p - 2 * width
+                        : p - 2 * width - height;
+                int j = p < width ? p : p < 2 * width ? p - width : p - 2 * width < height ? 0 : width - 1;
+                int label = labels[i * width + j];
+                if (label == 0) {
+                    borderNodes[base + p] = -1;
+                    continue;
+                }
+                if (labelNode[label] < 0) {
+                    labelNode[label] = base + nodes++;
+                    parent.set(labelNode[label], labelNode[label]);
+                }
+                borderNodes[base + p] = labelNode[label];
+            }
+            if (startRow >= top && startRow < top + height && startColumn >= left && startColumn < left + width) {
+                startNode = labelNode[labels[(startRow - top) * width + startColumn - left]];
+            }
+        }
+
+        private void joinTile(int tile) {
+            int tileRow = tile / tileCols;
+            int tileCol = tile % tileCols;
+            int height = Math.min(TILE_SIZE, rows - tileRow * TILE_SIZE);
+            int width = Math.min(TILE_SIZE, cols - tileCol * TILE_SIZE);
+            int base = tile * perimeter;
+            if (tileCol + 1 < tileCols) { // Our right edge against the left edge of the next tile.
+                int rightWidth = Math.min(TILE_SIZE, cols - (tileCol + 1) * TILE_SIZE);
+                int other = (tile + 1) * perimeter + 2 * rightWidth;
+                for (int i = 0; i < height; i++) {
+                    join(borderNodes[base + 2 * width + height + i], borderNodes[other + i]);
+                }
+            }
+            if (tileRow + 1 < tileRows) { // Our bottom edge against the top edge of the tile below.
+                int other = (tile + tileCols) * perimeter;
+                for (int j = 0; j < width; j++) {
+                    join(borderNodes[base + width + j], borderNodes[other + j]);
+                }
+            }
+        }
+
+        private int fillTile(int tile) {
+            int top = tile / tileCols * TILE_SIZE;
+            int left = tile % tileCols * TILE_SIZE;
+            int height = Math.min(TILE_SIZE, rows - top);
+            int width = Math.min(TILE_SIZE, cols - left);
+            FillScratch s = scratch.get();
+            s.top = 0;
+            if (startRow >= top && startRow < top + height && startColumn >= left && startColumn < left + width) {
+                s.push(startRow, startColumn);
+            }
+            if (startRoot >= 0) {
+                int base = tile * perimeter;
+                for (int p = 0; p < 2 * width + 2 * height; p++) {
+                    int node = borderNodes[base + p];
+                    if (node >= 0 && find(node) == startRoot) {
+                        int i = p < width ? 0 : p < 2 * width ? height - 1 : p - 2 * width < height ? p - 2 * width
+                                : p - 2 * width - height;
+                        int j = p < width ? p : p < 2 * width ? p - width : p - 2 * width < height ? 0 : width - 1;
+                        s.push(top + i, left + j);
+                    }
+                }
+            }
+            return fillWithin(grid, cols, top, left, top + height - 1, left + width - 1, targetColor,
+                    replacementColor, s);
+        }
+
+        private int find(int node) {
+            int p;
+            while ((p = parent.get(node)) != node) {
+                int grandparent = parent.get(p);
+                parent.compareAndSet(node, p, grandparent); // Path halving; losing the race is harmless.
+                node = grandparent;
+            }
+            return node;
+        }
+
+        private void join(int a, int b) {
+            if (a < 0 || b < 0) {
+                return;
+            }
+            while (true) {
+                a = find(a);
+                b = find(b);
+                if (a == b) {
+                    return;
+                }
+                if (a < b) { // Always link the larger root below the smaller one.
+                    int t = a;
+                    a = b;
+                    b = t;
+                }
+                if (parent.compareAndSet(a, a, b)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Scaling benchmark of the parallel fill: fills a size x size grid shaped as a solid block, a
+    // checkerboard and a spiral maze sequentially and with 1, 2, 4, ... threads up to the number of
+    // processors, and prints the best of three runs for each.
+    private static void runScaling(int size) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        String[] shapes = { "solid", "checkerboard", "spiral" };
+        System.out.println("Grid " + size + "x" + size + ", " + processors + " processors");
+        for (String shape : shapes) {
+            byte[] original = makeShape(shape, size);
+            long sequential = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                byte[] grid = original.clone();
+                long start = System.nanoTime();
+                scanlineFill(grid, size, size, 0, 0, (byte) 'W', (byte) 'R');
+                sequential = Math.min(sequential, System.nanoTime() - start);
+            }
+            System.out.println(String.format("%-12s sequential : %8.1f ms", shape, sequential / 1_000_000.0));
+            for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                long best = Long.MAX_VALUE;
+                int cells = 0;
+                for (int run = 0; run < 3; run++) {
+                    byte[] grid = original.clone();
+                    long start = System.nanoTime();
+                    cells = new ParallelFill(grid, size, size).fill(0, 0, (byte) 'R', pool);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                pool.shutdown();
+                System.out.println(String.format("%-12s threads %3d: %8.1f ms, %d cells", shape, threads,
+                        best / 1_000_000.0, cells));
+                if (threads == processors) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // Builds a benchmark grid whose region at (0, 0) is 'W' and has the given shape.
+    private static byte[] makeShape(String shape, int size) {
+        byte[] grid = new byte[size * size];
+        if (shape.equals("solid")) {
+            Arrays.fill(grid, (byte) 'W');
+        } else if (shape.equals("checkerboard")) {
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    grid[i * size + j] = (byte) ((i + j) % 2 == 0 ? 'W' : 'X');
+                }
+            }
+        } else { // A one-cell-wide corridor spiralling inwards from (0, 0) between 'X' walls.
+            Arrays.fill(grid, (byte) 'X');
+            int top = 0;
+            int left = 0;
+            int bottom = size - 1;
+            int right = size - 1;
+            while (top <= bottom && left <= right) {
+                for (int j = left; j <= right; j++) {
+                    grid[top * size + j] = 'W';
+                }
+                for (int i = top; i <= bottom; i++) {
+                    grid[i * size + right] = 'W';
+                }
+                if (top + 2 > bottom || left + 2 > right) {
+                    break;
+                }
+                for (int j = left; j <= right; j++) {
+                    grid[bottom * size + j] = 'W';
+                }
+                for (int i = top + 2; i <= bottom; i++) {
+                    grid[i * size + left] = 'W';
+                }
+                if (left + 1 < size) {
+                    grid[(top + 2) * size + left + 1] = 'W'; // Step into the next ring.
+                }
+                top += 2;
+                left += 2;
+                bottom -= 2;
+                right -= 2;
+            }
+        }
+        return grid;
+    }
+
+    // Batch mode: applies the given first fill and then every "row,col,color" line of the
+    // operations file (or stdin for "-") to the same grid in order, printing "row,col,color: cells"
+    // per operation and the overall throughput at the end. Operations are parsed straight from
+    // bytes and the fill reuses its seed stack, so the steady state allocates nothing per operation.
+    // With a component index, fills are applied through it and "row,col,?" queries report the size
+    // and bounding box of the region at (row, col) without changing it.
+    private static void runBatch(byte[] grid, int rows, int cols, int firstRow, int firstColumn, byte firstColor,
+            String operationsFile, ComponentIndex index) {
+        long batchStart = System.nanoTime();
+        long operations = 0;
+        long totalCells = 0;
+        try (InputStream in = operationsFile.equals("-") ? System.in : new FileInputStream(operationsFile);
+                OperationReader reader = new OperationReader(in)) {
+            OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+            byte[] line = new byte[64];
+            reader.row = firstRow;
+            reader.column = firstColumn;
+            reader.color = firstColor;
+            boolean first = true;
+            while (first || reader.next()) {
+                first = false;
+                if (reader.error != null) {
+                    out.flush();
+                    System.out.println("Operation on line " + reader.lineNumber + ": " + reader.error);
+                    continue;
+                }
+                if (reader.row >= rows || reader.column >= cols) {
+                    out.flush();
+                    System.out.println("Operation on line " + reader.lineNumber + ": start node (" + reader.row + ","
+                            + reader.column + ") is outside the matrix bounds.");
+                    continue;
+                }
+                int length = writeNumber(line, 0, reader.row);
+                line[length++] = ',';
+                length = writeNumber(line, length, reader.column);
+                line[length++] = ',';
+                line[length++] = reader.color;
+                line[length++] = ':';
+                line[length++] = ' ';
+                int cell = reader.row * cols + reader.column;
+                operations++;
+                if (reader.color == QUERY) {
+                    if (index == null) {
+                        out.flush();
+                        System.out.println("Operation on line " + reader.lineNumber + ": queries need -index.");
+                        continue;
+                    }
+                    int root = index.find(cell);
+                    length = writeNumber(line, length, index.size(root));
+                    for (int k = 0; k < 4; k++) { // Bounding box as " top left bottom right".
+                        line[length++] = ' ';
+                        length = writeNumber(line, length, index.bound(root, k));
+                    }
+                } else {
+                    byte targetColor = index != null ? index.colorAt(cell) : grid[cell];
+                    int cells;
+                    if (targetColor == reader.color) {
+                        cells = 0;
+                    } else if (index != null) {
+                        cells = index.fill(cell, reader.color);
+                    } else {
+                        cells = scanlineFill(grid, rows, cols, reader.row, reader.column, targetColor, reader.color);
+                    }
+                    totalCells += cells;
+                    length = writeNumber(line, length, cells);
+                }
+                line[length++] = '\n';
+                out.write(line, 0, length);
+            }
+            out.flush();
+        } catch (FileNotFoundException e) {
+            System.out.println("File not found: " + new File(operationsFile).getAbsolutePath());
+            return;
+        } catch (IOException e) {
+            System.out.println("Could not read operations: " + e.getMessage());
+            return;
+        }
+        double seconds = (System.nanoTime() - batchStart) / 1_000_000_000.0;
+        System.out.println("Operations: " + operations + ", total cells updated: " + totalCells);
+        System.out.println(String.format("Throughput: %.0f operations/s, %.0f cells/s", operations / seconds,
+                totalCells / seconds));
+    }
+
+    // Writes the decimal digits of a non-negative number into buffer at position and returns the
+    // position after the last digit.
+    private static int writeNumber(byte[] buffer, int position, long value) {
+        int end = position;
+        do {
+            buffer[end++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int l = position, r = end - 1; l < r; l++, r--) {
+            byte t = buffer[l];
+            buffer[l] = buffer[r];
+            buffer[r] = t;
+        }
+        return end;
+    }
+
+    // Colour byte of a batch operation that queries its region instead of filling it.
+    private static final byte QUERY = '?';
+
+    // Reads "row,col,color" lines one byte at a time. After next() returns true, either error is
+    // null and row, column and color hold the operation, or error describes the malformed line.
+    // Blank lines are skipped.
+    static final class OperationReader implements AutoCloseable {
+        private final InputStream in;
+        int row;
+        int column;
+        byte color;
+        String error;
+        long lineNumber;
+
+        OperationReader(InputStream in) {
+            this.in = new BufferedInputStream(in, 1 << 16);
+        }
+
+        boolean next() throws IOException {
+            int b;
+            do { // Skip blank lines.
+                b = in.read();
+                if (b == '\n') {
+                    lineNumber++;
+                }
+            } while (b == '\n' || b == '\r');
+            if (b < 0) {
+                return false;
+            }
+            lineNumber++;
+            error = null;
+            row = 0;
+            column = 0;
+            int field = 0; // 0: row, 1: column, 2: color, 3: done.
+            boolean digits = false;
+            for (; b >= 0 && b != '\n'; b = in.read()) {
+                if (error != null || b == '\r') {
+                    continue; // Skip the rest of a malformed line.
+                }
+                if (field < 2 && b >= '0' && b <= '9') {
+                    long value = (field == 0 ? row : column) * 10L + (b - '0');
+                    if (value > Integer.MAX_VALUE) {
+                        error = "start node is outside the matrix bounds.";
+                    } else if (field == 0) {
+                        row = (int) value;
+                    } else {
+                        column = (int) value;
+                    }
+                    digits = true;
+                } else if (field < 2 && b == ',' && digits) {
+                    field++;
+                    digits = false;
+                } else if (field == 2 && (isAllowedCharacter((char) b) || b == QUERY)) {
+                    color = (byte) b;
+                    field = 3;
+                } else if (field == 3 && (b == ' ' || b == '\t')) {
+                    continue; // Trailing whitespace.
+                } else {
+                    error = field == 2 ? "invalid replacement color. Only R,G,B,Y,W,g,X are allowed."
+                            : "invalid operation format. Expected format: row,column,color";
+                }
+            }
+            if (error == null && field != 3) {
+                error = "invalid operation format. Expected format: row,column,color";
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // Connected-component index over a flat colour grid. Cells of the same colour that touch
+    // horizontally or vertically are joined in a union-find whose roots carry the component's
+    // colour, size and bounding box, so the size of the region at any cell (the number of cells a
+    // fill there would change) is one find away. Each component also keeps a linked list of cells
+    // in neighbouring components. A fill only changes the colour stored at the root and merges the
+    // component with the neighbours of the new colour, splicing their lists together, so its cost
+    // depends on the number of neighbouring components rather than on the number of cells. The
+    // grid itself is not updated; colorAt() gives the current colour of a cell.
+    static final class ComponentIndex {
+        private final int[] parent;
+        private final byte[] color; // The fields below are only meaningful at roots.
+        private final int[] size;
+        private final int[] top;
+        private final int[] left;
+        private final int[] bottom;
+        private final int[] right;
+        private final int[] edgeHead; // Neighbour list of each component, -1 when empty.
+        private final int[] edgeTail;
+        private final int[] edgeCell; // A cell of the neighbouring component; resolve with find().
+        private final int[] edgeNext;
+        private final int[] seen; // Stamp per root used to drop duplicate neighbours.
+        private int stamp;
+        private int[] merge = new int[16]; // Scratch list of the neighbours a fill merges with.
+
+        ComponentIndex(byte[] grid, int rows, int cols) {
+            int cells = rows * cols;
+            parent = new int[cells];
+            color = grid.clone();
+            size = new int[cells];
+            top = new int[cells];
+            left = new int[cells];
+            bottom = new int[cells];
+            right = new int[cells];
+            edgeHead = new int[cells];
+            edgeTail = new int[cells];
+            seen = new int[cells];
+            Arrays.fill(edgeHead, -1);
+            int edges = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                parent[cell] = cell;
+                size[cell] = 1;
+                top[cell] = bottom[cell] = cell / cols;
+                left[cell] = right[cell] = cell % cols;
+            }
+            for (int cell = 0; cell < cells; cell++) {
+                if (cell % cols + 1 < cols) {
+                    if (grid[cell + 1] == grid[cell]) {
+                        union(cell, cell + 1);
+                    } else {
+                        edges += 2;
+                    }
+                }
+                if (cell + cols < cells) {
+                    if (grid[cell + cols] == grid[cell]) {
+                        union(cell, cell + cols);
+                    } else {
+                        edges += 2;
+                    }
+                }
+            }
+
+            // Record each boundary between two components in both components' lists.
+            edgeCell = new int[edges];
+            edgeNext = new int[edges];
+            int edge = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                if (cell % cols + 1 < cols && grid[cell + 1] != grid[cell]) {
+                    addEdge(edge++, find(cell), cell + 1);
+                    addEdge(edge++, find(cell + 1), cell);
+                }
+                if (cell + cols < cells && grid[cell + cols] != grid[cell]) {
+                    addEdge(edge++, find(cell), cell + cols);
+                    addEdge(edge++, find(cell + cols), cell);
+                }
+            }
+            for (int cell = 0; cell < cells; cell++) {
+                if (parent[cell] == cell) {
+                    compact(cell);
+                }
+            }
+        }
+
+        // Root of the component containing cell, halving the path on the way up.
+        int find(int cell) {
+            while (parent[cell] != cell) {
+                parent[cell] = parent[parent[cell]];
+                cell = parent[cell];
+            }
+            return cell;
+        }
+
+        byte colorAt(int cell) {
+            return color[find(cell)];
+        }
+
+        int size(int root) {
+            return size[root];
+        }
+
+        // Bounding box of a component: 0 top row, 1 left column, 2 bottom row, 3 right column.
+        int bound(int root, int side) {
+            switch (side) {
+                case 0:
+                    return top[root];
+                case 1:
+                    return left[root];
+                case 2:
+                    return bottom[root];
+                default:
+                    return right[root];
+            }
+        }
+
+        // Recolours the component containing cell and returns how many cells changed.
+        int fill(int cell, byte replacementColor) {
+            int root = find(cell);
+            if (color[root] == replacementColor) {
+                return 0;
+            }
+            int changed = size[root];
+            color[root] = replacementColor;
+            int merges = compact(root);
+            int merged = root;
+            for (int k = 0; k < merges; k++) {
+                merged = union(merged, merge[k]);
+            }
+            return changed;
+        }
+
+        // Rewrites the neighbour list of root so that it holds each neighbouring component once,
+        // and collects the neighbours that have the same colour as root into merge. Returns how many
+        // were collected.
+        private int compact(int root) {
+            stamp++;
+            seen[root] = stamp;
+            int merges = 0;
+            int kept = -1;
+            int edge = edgeHead[root];
+            edgeHead[root] = -1;
+            while (edge >= 0) {
+                int following = edgeNext[edge];
+                int neighbour = find(edgeCell[edge]);
+                if (seen[neighbour] != stamp) {
+                    seen[neighbour] = stamp;
+                    if (color[neighbour] == color[root]) {
+                        if (merges == merge.length) {
+                            merge = Arrays.copyOf(merge, merges * 2);
+                        }
+                        merge[merges++] = neighbour;
+                    } else {
+                        edgeCell[edge] = neighbour;
+                        edgeNext[edge] = -1;
+                        if (kept < 0) {
+                            edgeHead[root] = edge;
+                        } else {
+                            edgeNext[kept] = edge;
+                        }
+                        kept = edge;
+                    }
+                }
+                edge = following;
+            }
+            edgeTail[root] = kept;
+            return merges;
+        }
+
+        private void addEdge(int edge, int root, int neighbourCell) {
+            edgeCell[edge] = neighbourCell;
+            edgeNext[edge] = edgeHead[root];
+            if (edgeHead[root] < 0) {
+                edgeTail[root] = edge;
+            }
+            edgeHead[root] = edge;
+        }
+
+        // Joins the components of a and b and returns the new root.
+        private int union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return rootA;
+            }
+            if (size[rootA] < size[rootB]) { // Union by size.
+                int t = rootA;
+                rootA = rootB;
+                rootB = t;
+            }
+            parent[rootB] = rootA;
+            size[rootA] += size[rootB];
+            top[rootA] = Math.min(top[rootA], top[rootB]);
+            left[rootA] = Math.min(left[rootA], left[rootB]);
+            bottom[rootA] = Math.max(bottom[rootA], bottom[rootB]);
+            right[rootA] = Math.max(right[rootA], right[rootB]);
+            if (edgeHead[rootB] >= 0) { // Append the neighbour list of b to that of a.
+                if (edgeHead[rootA] < 0) {
+                    edgeHead[rootA] = edgeHead[rootB];
+                } else {
+                    edgeNext[edgeTail[rootA]] = edgeHead[rootB];
+                }
+                edgeTail[rootA] = edgeTail[rootB];
+            }
+            return rootA;
+        }
+    }
+
+    // -metrics <file|-> writes phase timings and counters as JSON once run() ends, on every path.
+    private static String metricsFile;
+
     public static void main(String[] args) {
+        try {
+            run(args);
+        } finally {
+            if (metricsFile != null) {
+                Metrics.writeSummary("PaintFill", metricsFile);
+            }
+        }
+    }
+
+    private static void run(String[] args) {
         // Check for command line argument presence
         long startTime = System.nanoTime();
-        if (args.length < 1) {
+        String fileName = null;
+        boolean useDfs = false; // -dfs selects the original recursive fill over nested lists.
+        boolean printSpans = false; // -spans lists the modified cells as run-length encoded spans.
+        String operationsFile = null; // -batch <file|-> applies a stream of fills to the same grid.
+        boolean useIndex = false; // -index answers batch fills and queries from a component index.
+        int threads = 1; // -threads <n> runs the tiled parallel fill on n threads.
+        boolean mapFile = false; // -mmap fills the memory-mapped file instead of reading it into the heap.
+        boolean inPlace = false; // -inplace also writes the filled canvas back into the file; implies -mmap.
+        for (int a = 0; a < args.length; a++) {
+            String arg = args[a];
+            if (arg.equals("-metrics") && a + 1 < args.length) {
+                metricsFile = args[++a];
+                System.setProperty(Metrics.PROPERTY, "true"); // Before Metrics is first used.
+            } else if (arg.equals("-batch") && a + 1 < args.length) {
+                operationsFile = args[++a];
+            } else if (arg.equals("-threads") && a + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++a]);
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.out.println("The thread count must be a positive integer.");
+                    return;
+                }
+            } else if (arg.equals("-scaling") && a + 1 < args.length) {
+                int size;
+                try {
+                    size = Integer.parseInt(args[++a]);
+                } catch (NumberFormatException e) {
+                    size = 0;
+                }
+                if (size < 1 || (long) size * size > MAX_GRID_CELLS) {
+                    System.out.println("Usage: PaintFill -scaling <grid size from 1 to "
+                            + (int) Math.sqrt(MAX_GRID_CELLS) + ">");
+                    return;
+                }
+                runScaling(size);
+                return;
+            } else if (arg.equals("-index")) {
+                useIndex = true;
+            } else if (arg.equals("-dfs")) {
+                useDfs = true;
+            } else if (arg.equals("-spans")) {
+                printSpans = true;
+            } else if (arg.equals("-mmap")) {
+                mapFile = true;
+            } else if (arg.equals("-inplace")) {
+                mapFile = true;
+                inPlace = true;
+            } else if (fileName == null) {
+                fileName = arg;
+            }
+        }
+        if (fileName == null) {
             System.out.println("Please provide the test case file name as a command line argument.");
             return;
         }
+        // -threads is the tiled fill of one operation on the in-memory byte grid.
+        if (threads > 1 && (operationsFile != null || mapFile || useDfs)) {
+            System.out.println("-threads <n> runs one tiled fill in memory; it cannot be combined with -batch,"
+                    + " -mmap, -inplace or -dfs.");
+            return;
+        }
+        // Batch mode always uses the scanline fill and prints no cell lists; -index only serves it.
+        if (operationsFile != null && (mapFile || useDfs || printSpans)) {
+            System.out.println("-batch runs the scanline fill in memory; it cannot be combined with -mmap,"
+                    + " -inplace, -dfs or -spans.");
+            return;
+        }
+        if (useIndex && operationsFile == null) {
+            System.out.println("-index only applies to -batch <file|->.");
+            return;
+        }
+        if (mapFile && useDfs) {
+            System.out.println("-mmap and -inplace use the scanline fill; they cannot be combined with -dfs.");
+            return;
+        }
+
+        if (mapFile) { // A single sequential fill of the mapped file.
+            if (runMapped(fileName, inPlace, printSpans)) {
+                System.out.println(System.nanoTime() - startTime);
+            }
+            return;
+        }
 
-        File file = new File(args[0]);
+        File file = new File(fileName);
+        long phaseStart = Metrics.now();
         try {
             Scanner s = new Scanner(file);
             List<String> errorMessages = new ArrayList<>();
-            ArrayList<String> lines = new ArrayList<>();
-            while (s.hasNextLine()) {
-                lines.add(s.nextLine());
-            }
-
-            // Extracting the starting node and replacement color information
-            String[] startNodeInfo;
-            String replacementColorInfo;
-            if (lines.size() >= 4) {
-                startNodeInfo = lines.remove(lines.size() - 2).split(",");
-                replacementColorInfo = lines.remove(lines.size() - 1);
-            } else {
-                System.out.println("Input file does not contain enough information.");
-                return;
-            }
-            if (!lines.isEmpty()) {
-                updatedCellsMatrix = new boolean[lines.size()][lines.get(0).length()];
-            }
 
-            // Validation of input matrix colors and dimensions
+            // Validation of input matrix colors and dimensions. The grid is kept as nested lists for
+            // dfs, as a flat row-major byte array for batch mode and the parallel fill, which need
+            // byte-addressable cells, and packed at 3 bits per cell otherwise. Rows are validated and
+            // stored as they are read, so no text copy of the canvas is kept; the packed grid is
+            // sized from the file length, which bounds the number of cells. The last two lines hold
+            // the start node and colour, so each line is held back until two more have been read.
             boolean invalidColorDetected = false;
-            int expectedLength = lines.isEmpty() ? 0 : lines.get(0).length();
+            boolean lengthMismatch = false;
+            boolean gridTooLarge = false;
+            int expectedLength = -1;
             ArrayList<ArrayList<Character>> matrix = new ArrayList<>();
-            for (String line : lines) {
-                ArrayList<Character> row = new ArrayList<>();
-                for (char ch : line.toCharArray()) {
+            boolean usePacked = !useDfs && operationsFile == null && threads <= 1;
+            byte[] grid = useDfs || usePacked ? null : new byte[0];
+            PackedGrid packed = usePacked ? new PackedGrid(file.length()) : null;
+            int rowCount = 0;
+            int lineCount = 0; // Grid lines, including any after an inconsistent one.
+            ArrayDeque<String> pending = new ArrayDeque<>(3);
+            while (s.hasNextLine()) {
+                pending.addLast(s.nextLine());
+                if (pending.size() <= 2) {
+                    continue;
+                }
+                String line = pending.removeFirst();
+                lineCount++;
+                if (expectedLength < 0) {
+                    expectedLength = line.length();
+                }
+                if (lengthMismatch) {
+                    continue; // Rows after an inconsistent one are not checked.
+                }
+                boolean lengthMatches = line.length() == expectedLength;
+                ArrayList<Character> row = useDfs ? new ArrayList<>() : null;
+                if (grid != null && lengthMatches && !gridTooLarge) {
+                    long needed = (long) (rowCount + 1) * expectedLength;
+                    if (needed > MAX_GRID_CELLS) {
+                        gridTooLarge = true;
+                        errorMessages.add("Canvas too large for -batch and -threads, which hold at most "
+                                + MAX_GRID_CELLS + " cells. Run without them for the packed grid.");
+                    } else if (needed > grid.length) {
+                        grid = Arrays.copyOf(grid, (int) Math.min(Math.max(2L * grid.length, needed), MAX_GRID_CELLS));
+                    }
+                }
+                for (int j = 0; j < line.length(); j++) {
+                    char ch = line.charAt(j);
                     if (!isAllowedCharacter(ch)) {
                         invalidColorDetected = true;
                     }
-                    row.add(ch);
+                    if (useDfs) {
+                        row.add(ch);
+                    } else if (!lengthMatches || invalidColorDetected || gridTooLarge) {
+                        continue; // The grid will not be used.
+                    } else if (usePacked) {
+                        packed.set((long) rowCount * expectedLength + j, PackedGrid.ENCODE[ch]);
+                    } else {
+                        grid[rowCount * expectedLength + j] = (byte) ch;
+                    }
                 }
-                if (row.size() != expectedLength) {
+                if (!lengthMatches) {
                     errorMessages.add("Inconsistent row length detected. All rows must have the same number of columns.");
-                    break;
+                    lengthMismatch = true;
+                    continue;
+                }
+                if (useDfs) {
+                    matrix.add(row);
                 }
-                matrix.add(row);
+                rowCount++;
+            }
+            phaseStart = Metrics.phase("PaintFill", "parse", phaseStart);
+
+            // Extracting the starting node and replacement color information
+            if (lineCount < 2) {
+                System.out.println("Input file does not contain enough information.");
+                return;
             }
+            String[] startNodeInfo = pending.removeFirst().split(",");
+            String replacementColorInfo = pending.removeFirst();
+            updatedColumns = expectedLength;
+            updatedCells = new long[(int) (((long) lineCount * updatedColumns + 63) >>> 6)];
             if (invalidColorDetected) {
                 errorMessages.add("Invalid color in matrix. Only R,G,B,Y,W,g,X are allowed.");
             }
@@ -118,33 +1628,83 @@ public class PaintFill {
                     int startRow = Integer.parseInt(startNodeInfo[0]);
                     int startColumn = Integer.parseInt(startNodeInfo[1]);
 
-                    if (startRow < 0 || startRow >= matrix.size() || startColumn < 0 || startColumn >= expectedLength) {
+                    if (startRow < 0 || startRow >= rowCount || startColumn < 0 || startColumn >= expectedLength) {
                         errorMessages.add("Start node (" + startRow + "," + startColumn
                                 + ") is outside the matrix bounds.");
                     } else if (replacementColorInfo.length() != 1 || !isAllowedCharacter(replacementColorInfo.charAt(0))) {
                         errorMessages.add("Invalid replacement color. Only R,G,B,Y,W,g,X are allowed.");
+                    } else if (errorMessages.isEmpty() && operationsFile != null) {
+                        // Batch mode: the file's own start node and colour are the first operation.
+                        phaseStart = Metrics.phase("PaintFill", "validate", phaseStart);
+                        updatedCells = null;
+                        ComponentIndex index = useIndex ? new ComponentIndex(grid, rowCount, expectedLength) : null;
+                        runBatch(grid, rowCount, expectedLength, startRow, startColumn,
+                                (byte) replacementColorInfo.charAt(0), operationsFile, index);
+                        phaseStart = Metrics.phase("PaintFill", "compute", phaseStart);
                     } else if (errorMessages.isEmpty()) {
                         // If all validations pass, proceed with the paint fill operation
                         char replacementColor = replacementColorInfo.charAt(0);
-                        char targetColor = matrix.get(startRow).get(startColumn);
+                        char targetColor;
+                        if (useDfs) {
+                            targetColor = matrix.get(startRow).get(startColumn);
+                        } else if (usePacked) {
+                            targetColor = PackedGrid.DECODE[packed.get((long) startRow * expectedLength + startColumn)];
+                        } else {
+                            targetColor = (char) grid[startRow * expectedLength + startColumn];
+                        }
                         if(replacementColor == targetColor) {
                             System.out.println("Target node and replacement color are same so no changes required");
                             return;
                         }
-                        
-                        dfs(matrix, startRow, startColumn, targetColor, replacementColor);
 
+                        phaseStart = Metrics.phase("PaintFill", "validate", phaseStart);
+                        if (useDfs) {
+                            dfs(matrix, startRow, startColumn, targetColor, replacementColor);
+                            if (Metrics.ENABLED) {
+                                Metrics.DFS_CALLS.add(dfsCalls);
+                                Metrics.DFS_MAX_DEPTH.max(dfsMaxDepth);
+                                Metrics.CELLS_FILLED.add(cellCount);
+                            }
+                        } else if (threads > 1) {
+                            ForkJoinPool pool = new ForkJoinPool(threads);
+                            cellCount = new ParallelFill(grid, rowCount, expectedLength).fill(startRow, startColumn,
+                                    (byte) replacementColor, pool);
+                            pool.shutdown();
+                        } else {
+                            cellCount = packedScanlineFill(packed, rowCount, expectedLength, startRow, startColumn,
+                                    PackedGrid.ENCODE[targetColor], PackedGrid.ENCODE[replacementColor]);
+                        }
+                        phaseStart = Metrics.phase("PaintFill", "compute", phaseStart);
 
-                        System.out.println("Modified Matrix:");
-                        for (ArrayList<Character> row : matrix) { // printing the updated matrix with the replacement color
-                            for (char cell : row) {
-                                System.out.print(cell + " ");
+                        // All output goes through one buffered stream: the rows through a writer, a whole
+                        // row at a time, and the cell locations as bytes.
+                        PrintStream stream = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+                        PrintWriter out = new PrintWriter(stream);
+                        out.println("Modified Matrix:");
+                        char[] rowText = new char[2 * expectedLength];
+                        Arrays.fill(rowText, ' ');
+                        for (int i = 0; i < rowCount; i++) { // printing the updated matrix with the replacement color
+                            if (usePacked) {
+                                packed.decodeRow((long) i * expectedLength, expectedLength, rowText);
+                            } else {
+                                for (int j = 0; j < expectedLength; j++) {
+                                    rowText[2 * j] = useDfs ? matrix.get(i).get(j) : (char) grid[i * expectedLength + j];
+                                }
                             }
-                            System.out.println();
+                            out.println(rowText);
+                        }
+                        if (printSpans) {
+                            out.println("Spans of cell locations modified:");
+                            out.flush();
+                            printUpdatedSpans(stream);
+                        } else {
+                            out.println("List of cell locations modified:");
+                            out.flush();
+                            printUpdatedCellsMatrix(stream); // printing the updated matrix cells indices
                         }
-                        System.out.println("List of cell locations modified:");
-                        printUpdatedCellsMatrix(); // printing the updated matrix cells indices
+                        stream.flush();
                         System.out.println("Total cells updated: " + cellCount);
+                        phaseStart = Metrics.phase("PaintFill", "output", phaseStart);
                     }
                 } catch (NumberFormatException e) {
                     errorMessages.add("Invalid start node format. Expected format: row,column"); 
@@ -1,50 +1,232 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-// Class to find the shortest cycle in a graph using adjacency matrix representation.
+// Class to find the shortest cycle in a graph using either an adjacency matrix or a
+// compressed sparse row (CSR) representation.
 public class ShortestCycle {
     static int V; // Static variable to store the number of vertices in the graph.
     static double[][] graph; // Static 2D array to represent the weighted graph using an adjacency matrix.
+    private static int[] matrixDegree; // Out-degree per vertex of the matrix, only built with -metrics.
+
+    // CSR representation: the edges leaving vertex u are stored at positions
+    // rowStart[u] .. rowStart[u + 1] - 1 of edgeTarget and edgeWeight. Memory is O(V + E).
+    static int[] rowStart;
+    static int[] edgeTarget;
+    static double[] edgeWeight;
+
+    // Work counters of the pruned search, reported when -pruned is given.
+    static long relaxations;
+    static long relaxationsSkipped;
+
+    // -metrics <file|-> writes phase timings and counters as JSON once run() ends, on every path.
+    private static String metricsFile;
 
     // Main method: the entry point of the program.
     public static void main(String[] args) {
+        try {
+            run(args);
+        } finally {
+            if (metricsFile != null) {
+                Metrics.writeSummary("ShortestCycle", metricsFile);
+            }
+        }
+    }
+
+    private static void run(String[] args) {
         long startTime = System.currentTimeMillis();
         // Check if the filename is provided as a command-line argument.
-        if (args.length < 1) {
+        String filename = null;
+        boolean useMatrix = false; // -matrix selects the original V x V adjacency matrix engine.
+        int threads = 1; // -threads <n> spreads the CSR search over n worker threads.
+        boolean pruned = false; // -pruned bounds every search by the best cycle found so far.
+        boolean generic = false; // -generic disables the integer-weight engines.
+        String convertTo = null; // -convert <output> writes the graph in binary format and exits.
+        boolean floatWeights = false; // -float stores 32-bit weights when converting.
+        String updatesFile = null; // -updates <file> applies "u v w" edge updates incrementally.
+        for (int a = 0; a < args.length; a++) {
+            if (args[a].equals("-metrics") && a + 1 < args.length) {
+                metricsFile = args[++a];
+                System.setProperty(Metrics.PROPERTY, "true"); // Before Metrics is first used.
+            } else if (args[a].equals("-convert") && a + 1 < args.length) {
+                convertTo = args[++a];
+            } else if (args[a].equals("-updates") && a + 1 < args.length) {
+                updatesFile = args[++a];
+            } else if (args[a].equals("-float")) {
+                floatWeights = true;
+            } else if (args[a].equals("-matrix")) {
+                useMatrix = true;
+            } else if (args[a].equals("-pruned")) {
+                pruned = true;
+            } else if (args[a].equals("-generic")) {
+                generic = true;
+            } else if (args[a].equals("-threads") && a + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++a]);
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.out.println("The thread count must be a positive integer.");
+                    return;
+                }
+            } else if (filename == null) {
+                filename = args[a]; // Store the filename provided as a command-line argument.
+            }
+        }
+        if (filename == null) {
             System.out.println("Please provide the filename as a command-line argument.");
             return; // Exit if no filename is provided.
         }
 
-        String filename = args[0]; // Store the filename provided as a command-line argument.
-
-        // Validate the format and data of the input file.
-        if (!validateFile(filename)) {
-            System.out.println("Input file is not in the correct format or contains invalid data.");
-            return; // Exit if the file is not valid.
+        // -matrix, -pruned and -threads <n> each select a different engine, so at most one may be
+        // given. Without them the engine follows the weights: bfs, dial or dijkstra (see WeightDomain).
+        if ((useMatrix ? 1 : 0) + (pruned ? 1 : 0) + (threads > 1 ? 1 : 0) > 1) {
+            System.out.println("-matrix, -pruned and -threads select different engines; give at most one of them.");
+            return;
         }
 
-        // Initialize vertices and determine the number of vertices in the graph.
-        Vertices(filename);
-        graph = new double[V][V]; // Initialize the adjacency matrix based on the number of vertices.
-        Graph(filename); // Populate the adjacency matrix with edge weights.
+        double smallestCycle;
+        String engine; // Name of the engine that produced the result, printed with the timing.
+        long phaseStart = Metrics.now();
+        if (useMatrix) {
+            // Validate the format and data of the input file.
+            if (!validateFile(filename)) {
+                System.out.println("Input file is not in the correct format or contains invalid data.");
+                return; // Exit if the file is not valid.
+            }
 
-        // Find the length of the smallest cycle in the graph.
-        double smallestCycle = SmallestCycle();
+            // Initialize vertices and determine the number of vertices in the graph.
+            Vertices(filename);
+            graph = new double[V][V]; // Initialize the adjacency matrix based on the number of vertices.
+            Graph(filename); // Populate the adjacency matrix with edge weights.
+            phaseStart = Metrics.phase("ShortestCycle", "parse", phaseStart);
 
-        // Print the length of the shortest cycle. Format the output based on whether
-        // the length is an integer or floating-point number.
-        if (smallestCycle == (long) smallestCycle) {
-            System.out.println("The length of the shortest cycle is: " + (long) smallestCycle);
+            // Find the length of the smallest cycle in the graph.
+            smallestCycle = SmallestCycle();
+            engine = "matrix";
         } else {
-            System.out.printf("The length of the shortest cycle is: %.1f\n", smallestCycle);
+            // Validate, count vertices and read edges in a single pass over the mapped file, or
+            // copy the ready-made CSR arrays out of a binary graph file.
+            try {
+                if (isBinaryGraph(filename)) {
+                    BinaryGraph(filename);
+                } else {
+                    MappedGraph(filename);
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("Input file is not in the correct format or contains invalid data.");
+                System.out.println(e.getMessage());
+                return;
+            }
+            phaseStart = Metrics.phase("ShortestCycle", "parse", phaseStart);
+            if (convertTo != null) {
+                writeBinaryGraph(convertTo, floatWeights);
+                System.out.println("Wrote " + V + " vertices and " + edgeTarget.length + " edges to " + convertTo);
+                return;
+            }
+            if (updatesFile != null) {
+                IncrementalCycle cycles = new IncrementalCycle();
+                System.out.println("The length of the shortest cycle is: " + formatLength(cycles.length()));
+                applyUpdates(cycles, updatesFile);
+                System.out.println(System.currentTimeMillis() - startTime);
+                Metrics.phase("ShortestCycle", "compute", phaseStart);
+                return;
+            }
+            WeightDomain domain = generic ? WeightDomain.REAL : detectWeightDomain();
+            if (threads > 1) {
+                smallestCycle = SmallestCycleParallel(threads);
+                engine = "parallel dijkstra, " + threads + " threads"
+                        + (domain == WeightDomain.REAL ? "" : " (the integer-weight engines run on one thread)");
+            } else if (pruned) {
+                smallestCycle = SmallestCyclePruned();
+                engine = "pruned dijkstra";
+            } else if (domain == WeightDomain.UNIT) {
+                smallestCycle = SmallestCycleBfs();
+                engine = "bfs (unit weights)";
+            } else if (domain == WeightDomain.SMALL_INTEGER) {
+                smallestCycle = SmallestCycleDial();
+                engine = "dial (integer weights up to " + (long) maxEdgeWeight() + ")";
+            } else {
+                smallestCycle = SmallestCycleCsr();
+                engine = "dijkstra";
+            }
+        }
+
+        phaseStart = Metrics.phase("ShortestCycle", "compute", phaseStart);
+
+        // Print the length of the shortest cycle.
+        System.out.println("The length of the shortest cycle is: " + formatLength(smallestCycle));
+
+        if (pruned && !useMatrix && threads == 1) {
+            System.out.println("Edge relaxations: " + relaxations + ", skipped: " + relaxationsSkipped);
         }
 
+        System.out.println("Engine: " + engine);
         long endTime = System.currentTimeMillis();
         long ptime = endTime - startTime;
         System.out.println(ptime);
+        Metrics.phase("ShortestCycle", "output", phaseStart);
+    }
+
+    // Method to format a cycle length based on whether it is an integer or floating-point number.
+    static String formatLength(double length) {
+        if (length == (long) length) {
+            return String.valueOf((long) length);
+        }
+        return String.format("%.1f", length);
+    }
+
+    // Method to apply the "u v w" lines of an update file one at a time, printing the shortest cycle
+    // after each update.
+    private static void applyUpdates(IncrementalCycle cycles, String filename) {
+        try (Scanner scanner = new Scanner(new File(filename))) {
+            int lineNumber = 0;
+            while (scanner.hasNextLine()) {
+                String line = scanner.nextLine().trim();
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                int u;
+                int v;
+                double weight;
+                try {
+                    if (parts.length != 3) {
+                        throw new NumberFormatException();
+                    }
+                    u = Integer.parseInt(parts[0]);
+                    v = Integer.parseInt(parts[1]);
+                    weight = Double.parseDouble(parts[2]);
+                    cycles.addEdge(u, v, weight);
+                } catch (IllegalArgumentException e) { // Also covers NumberFormatException.
+                    System.out.println("Invalid update on line " + lineNumber + ". Expected format: u v weight");
+                    return;
+                }
+                System.out.println(u + " -> " + v + " (" + parts[2] + "): shortest cycle "
+                        + formatLength(cycles.length()) + " " + Arrays.toString(cycles.witness()));
+            }
+        } catch (FileNotFoundException e) {
+            System.err.println("File not found: " + filename);
+            System.exit(1);
+        }
     }
 
     // Method to validate the input file format and data.
@@ -113,6 +295,449 @@ public class ShortestCycle {
         }
     }
 
+    // Method to read the graph data from the file into the CSR arrays. The file is memory-mapped and
+    // parsed straight from its bytes in one pass that also validates the format and finds V, so no
+    // Strings are created per line or per token. Throws IllegalArgumentException with the line and
+    // column of the first malformed character.
+    private static void MappedGraph(String filename) {
+        GraphParser parser = new GraphParser();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long offset = 0; offset < size; offset += GraphParser.CHUNK_SIZE) {
+                long length = Math.min(GraphParser.CHUNK_SIZE, size - offset);
+                parser.parse(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+            }
+            parser.finish();
+        } catch (NoSuchFileException e) {
+            System.err.println("File not found: " + filename); // Print an error if the file is not found.
+            System.exit(1); // Exit the program.
+        } catch (IOException e) {
+            System.err.println("Could not read graph file " + filename + ": " + e.getMessage());
+            System.exit(1);
+        }
+        V = parser.maxVertexIndex + 1; // Highest vertex index + 1 to accommodate 0-based indexing.
+        EdgeBuffer edges = parser.edges;
+        buildCsr(edges.from, edges.to, edges.weight, edges.count);
+    }
+
+    // Binary graph format, little-endian:
+    //   int magic ("SCG1"), int flags (bit 0: float32 weights), int V, int E,
+    //   int[V + 1] rowStart, int[E] edgeTarget, padding to a multiple of 8 bytes,
+    //   double[E] or float[E] edgeWeight.
+    // The arrays are the CSR arrays after duplicate and zero-weight edges were resolved.
+    static final int BINARY_MAGIC = 0x53434731;
+    static final int BINARY_FLOAT_WEIGHTS = 1;
+    private static final int BINARY_HEADER_BYTES = 16;
+    private static final int BINARY_CHUNK_BYTES = 1 << 30;
+
+    // Method to check whether the file starts with the binary format magic number.
+    private static boolean isBinaryGraph(String filename) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            return channel.read(header, 0) == 4 && header.getInt(0) == BINARY_MAGIC;
+        } catch (IOException e) {
+            return false; // Let the text loader report the missing file.
+        }
+    }
+
+    // Method to load the CSR arrays from a binary graph file. The sections are memory-mapped and
+    // bulk-copied into the arrays the engines index, with no per-edge parsing.
+    private static void BinaryGraph(String filename) {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            // Every section is checked against the file size before it is mapped, so a truncated
+            // file is reported as such rather than mapped past its end.
+            if (channel.size() < BINARY_HEADER_BYTES) {
+                throw new IllegalArgumentException("Truncated binary graph file: shorter than its "
+                        + BINARY_HEADER_BYTES + "-byte header.");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BINARY_HEADER_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            int flags = header.getInt(4);
+            int vertexCount = header.getInt(8);
+            int edgeCount = header.getInt(12);
+            boolean floats = (flags & BINARY_FLOAT_WEIGHTS) != 0;
+            if (vertexCount < 0 || edgeCount < 0
+                    || channel.size() != binaryWeightOffset(vertexCount, edgeCount) + (long) edgeCount * (floats ? 4 : 8)) {
+                throw new IllegalArgumentException("Truncated or invalid binary graph file: the header does not match the file size.");
+            }
+
+            V = vertexCount;
+            rowStart = new int[V + 1];
+            edgeTarget = new int[edgeCount];
+            edgeWeight = new double[edgeCount];
+            long position = BINARY_HEADER_BYTES;
+            position = copyInts(channel, position, rowStart);
+            copyInts(channel, position, edgeTarget);
+            position = binaryWeightOffset(vertexCount, edgeCount);
+            for (int done = 0; done < edgeCount;) {
+                int count = Math.min(edgeCount - done, BINARY_CHUNK_BYTES / 8);
+                ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * (floats ? 4 : 8))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                if (floats) {
+                    for (int k = 0; k < count; k++) {
+                        edgeWeight[done + k] = chunk.getFloat(k * 4);
+                    }
+                } else {
+                    chunk.asDoubleBuffer().get(edgeWeight, done, count);
+                }
+                position += (long) count * (floats ? 4 : 8);
+                done += count;
+            }
+        } catch (NoSuchFileException e) {
+            System.err.println("File not found: " + filename); // Print an error if the file is not found.
+            System.exit(1); // Exit the program.
+        } catch (IOException e) {
+            System.err.println("Could not read graph file " + filename + ": " + e.getMessage());
+            System.exit(1);
+        }
+
+        // Check the structure once so a corrupt file cannot send a search out of bounds.
+        if (rowStart[0] != 0 || rowStart[V] != edgeTarget.length) {
+            throw new IllegalArgumentException("Binary graph row offsets do not cover the edge array.");
+        }
+        for (int u = 0; u < V; u++) {
+            if (rowStart[u] > rowStart[u + 1]) {
+                throw new IllegalArgumentException("Binary graph row offsets are not increasing at vertex " + u + ".");
+            }
+        }
+        for (int e = 0; e < edgeTarget.length; e++) {
+            if (edgeTarget[e] < 0 || edgeTarget[e] >= V || !(edgeWeight[e] > 0)) {
+                throw new IllegalArgumentException("Binary graph edge " + e + " is invalid.");
+            }
+        }
+    }
+
+    // Method to write the CSR arrays in the binary graph format, optionally rounding weights to float.
+    private static void writeBinaryGraph(String filename, boolean floatWeights) {
+        Path path = Paths.get(filename);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(BINARY_MAGIC).putInt(floatWeights ? BINARY_FLOAT_WEIGHTS : 0);
+            buffer.putInt(V).putInt(edgeTarget.length);
+            for (int offset : rowStart) {
+                buffer = drainIfFull(channel, buffer, 4).putInt(offset);
+            }
+            for (int target : edgeTarget) {
+                buffer = drainIfFull(channel, buffer, 4).putInt(target);
+            }
+            if (((rowStart.length + edgeTarget.length) & 1) != 0) {
+                buffer = drainIfFull(channel, buffer, 4).putInt(0); // Align the weights to 8 bytes.
+            }
+            for (double weight : edgeWeight) {
+                if (floatWeights) {
+                    // Keep tiny weights positive, since a zero weight would mean there is no edge.
+                    buffer = drainIfFull(channel, buffer, 4).putFloat(Math.max((float) weight, Float.MIN_VALUE));
+                } else {
+                    buffer = drainIfFull(channel, buffer, 8).putDouble(weight);
+                }
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write " + filename + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Writes the buffer out when fewer than the needed bytes remain, then returns it ready for puts.
+    private static ByteBuffer drainIfFull(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() < needed) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    // Byte offset of the weight section: the int sections rounded up to a multiple of 8 bytes.
+    private static long binaryWeightOffset(int vertexCount, int edgeCount) {
+        long end = BINARY_HEADER_BYTES + 4L * ((long) vertexCount + 1 + edgeCount);
+        return (end + 7) & ~7L;
+    }
+
+    // Copies a section of little-endian ints from the file into dst, one mapped chunk at a time, and
+    // returns the position just past the section.
+    private static long copyInts(FileChannel channel, long position, int[] dst) throws IOException {
+        for (int done = 0; done < dst.length;) {
+            int count = Math.min(dst.length - done, BINARY_CHUNK_BYTES / 4);
+            channel.map(FileChannel.MapMode.READ_ONLY, position, count * 4L).order(ByteOrder.LITTLE_ENDIAN)
+                    .asIntBuffer().get(dst, done, count);
+            position += count * 4L;
+            done += count;
+        }
+        return position;
+    }
+
+    // Growable primitive edge list.
+    static final class EdgeBuffer {
+        int[] from = new int[16];
+        int[] to = new int[16];
+        double[] weight = new double[16];
+        int count;
+
+        void add(int u, int v, double w) {
+            if (count == from.length) { // Grow the edge buffers by doubling.
+                from = Arrays.copyOf(from, count * 2);
+                to = Arrays.copyOf(to, count * 2);
+                weight = Arrays.copyOf(weight, count * 2);
+            }
+            from[count] = u;
+            to[count] = v;
+            weight[count] = w;
+            count++;
+        }
+    }
+
+    // Byte-level parser for lines of the form "vertex: neighbor weight neighbor weight ...", accepting
+    // exactly what the validateFile() regex accepts. The state is kept between calls to parse(), so
+    // tokens may straddle the boundary between two mapped chunks.
+    static final class GraphParser {
+        static final long CHUNK_SIZE = 1L << 30;
+
+        private static final int LINE_START = 0; // Expecting the first digit of the vertex.
+        private static final int VERTEX = 1; // Inside the vertex, expecting digits or ':'.
+        private static final int AFTER_VERTEX = 2; // After ':', expecting ' ' or the end of the line.
+        private static final int NEIGHBOR_START = 3; // Expecting the first digit of a neighbor.
+        private static final int NEIGHBOR = 4; // Inside a neighbor, expecting digits or ' '.
+        private static final int WEIGHT_START = 5; // Expecting the first digit of a weight.
+        private static final int WEIGHT = 6; // Inside the integer part, expecting digits, '.', ' ' or the end.
+        private static final int FRACTION_START = 7; // After '.', expecting a digit.
+        private static final int FRACTION = 8; // Inside the fraction, expecting digits, ' ' or the end.
+
+        // Powers of ten that are exact doubles, so mantissa / 10^k is correctly rounded.
+        private static final double[] POWERS_OF_TEN = new double[23];
+        static {
+            POWERS_OF_TEN[0] = 1;
+            for (int k = 1; k < POWERS_OF_TEN.length; k++) {
+                POWERS_OF_TEN[k] = POWERS_OF_TEN[k - 1] * 10;
+            }
+        }
+
+        final EdgeBuffer edges = new EdgeBuffer();
+        int maxVertexIndex = -1;
+
+        private int state = LINE_START;
+        private boolean afterCarriageReturn;
+        private long line = 1;
+        private long column = 1;
+        private long number; // Vertex or neighbor being read.
+        private int vertex; // Vertex of the current line.
+        private int neighbor; // Neighbor of the current edge.
+        private long mantissa; // All digits of the current weight, while they fit exactly.
+        private int scale; // Number of fraction digits of the current weight.
+        private int digits; // Number of significant digits of the current weight.
+        private char[] weightText = new char[32]; // Raw text of the current weight, for long weights.
+        private int weightLength;
+
+        void parse(MappedByteBuffer buffer) {
+            int limit = buffer.limit();
+            for (int i = 0; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n' && afterCarriageReturn) {
+                    afterCarriageReturn = false; // Second half of "\r\n".
+                    continue;
+                }
+                afterCarriageReturn = b == '\r';
+                if (b == '\n' || b == '\r') {
+                    endLine();
+                    line++;
+                    column = 1;
+                } else {
+                    accept(b);
+                    column++;
+                }
+            }
+        }
+
+        void finish() {
+            if (state != LINE_START) {
+                endLine(); // The last line has no terminator.
+            }
+        }
+
+        private void accept(byte b) {
+            boolean digit = b >= '0' && b <= '9';
+            switch (state) {
+                case LINE_START:
+                case NEIGHBOR_START:
+                    if (!digit) {
+                        fail(state == LINE_START ? "expected a vertex number" : "expected a neighbor number");
+                    }
+                    number = b - '0';
+                    state = state == LINE_START ? VERTEX : NEIGHBOR;
+                    return;
+                case VERTEX:
+                case NEIGHBOR:
+                    if (digit) {
+                        number = number * 10 + (b - '0');
+                        if (number > Integer.MAX_VALUE - 1) {
+                            fail("vertex number is too large");
+                        }
+                    } else if (state == VERTEX && b == ':') {
+                        vertex = (int) number;
+                        maxVertexIndex = Math.max(maxVertexIndex, vertex);
+                        state = AFTER_VERTEX;
+                    } else if (state == NEIGHBOR && b == ' ') {
+                        neighbor = (int) number;
+                        maxVertexIndex = Math.max(maxVertexIndex, neighbor);
+                        state = WEIGHT_START;
+                    } else {
+                        fail(state == VERTEX ? "expected a digit or ':'" : "expected a digit or ' '");
+                    }
+                    return;
+                case AFTER_VERTEX:
+                    if (b != ' ') {
+                        fail("expected ' ' or the end of the line");
+                    }
+                    state = NEIGHBOR_START;
+                    return;
+                case WEIGHT_START:
+                case FRACTION_START:
+                    if (!digit) {
+                        fail("expected a digit");
+                    }
+                    if (state == WEIGHT_START) {
+                        mantissa = 0;
+                        scale = 0;
+                        digits = 0;
+                        weightLength = 0;
+                    }
+                    state = state == WEIGHT_START ? WEIGHT : FRACTION;
+                    weightDigit(b);
+                    return;
+                case WEIGHT:
+                case FRACTION:
+                    if (digit) {
+                        weightDigit(b);
+                    } else if (b == '.' && state == WEIGHT) {
+                        appendWeightText(b);
+                        state = FRACTION_START;
+                    } else if (b == ' ') {
+                        addEdge();
+                        state = NEIGHBOR_START;
+                    } else {
+                        fail(state == WEIGHT ? "expected a digit, '.', ' ' or the end of the line"
+                                : "expected a digit, ' ' or the end of the line");
+                    }
+                    return;
+                default:
+                    throw new IllegalStateException("Unknown parser state " + state);
+            }
+        }
+
+        private void weightDigit(byte b) {
+            appendWeightText(b);
+            if (state == FRACTION) {
+                scale++;
+            }
+            if (mantissa != 0 || b != '0') {
+                digits++;
+            }
+            if (digits <= 15) {
+                mantissa = mantissa * 10 + (b - '0');
+            }
+        }
+
+        private void appendWeightText(byte b) {
+            if (weightLength == weightText.length) {
+                weightText = Arrays.copyOf(weightText, weightLength * 2);
+            }
+            weightText[weightLength++] = (char) b;
+        }
+
+        private void addEdge() {
+            double weight;
+            if (digits > 15 || scale >= POWERS_OF_TEN.length) {
+                // The mantissa may no longer be exact, so let Double.parseDouble round the text.
+                weight = Double.parseDouble(new String(weightText, 0, weightLength));
+            } else {
+                weight = mantissa / POWERS_OF_TEN[scale];
+            }
+            edges.add(vertex, neighbor, weight);
+        }
+
+        private void endLine() {
+            switch (state) {
+                case AFTER_VERTEX:
+                    break;
+                case WEIGHT:
+                case FRACTION:
+                    addEdge();
+                    break;
+                case LINE_START:
+                    fail("empty line");
+                    break;
+                default:
+                    fail("unexpected end of line");
+            }
+            state = LINE_START;
+        }
+
+        private void fail(String message) {
+            throw new IllegalArgumentException("Line " + line + ", column " + column + ": " + message + ".");
+        }
+    }
+
+    // Method to pack an edge list into the CSR arrays. As with addEdge(), a later duplicate of an
+    // edge overwrites the earlier one, and a weight of 0 means there is no edge.
+    static void buildCsr(int[] from, int[] to, double[] weight, int edgeCount) {
+        // Counting sort of the edges by source vertex, stable so input order is kept within a row.
+        int[] start = new int[V + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            start[from[e] + 1]++;
+        }
+        for (int u = 0; u < V; u++) {
+            start[u + 1] += start[u];
+        }
+        int[] cursor = Arrays.copyOf(start, V);
+        int[] sortedTarget = new int[edgeCount];
+        double[] sortedWeight = new double[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            int p = cursor[from[e]]++;
+            sortedTarget[p] = to[e];
+            sortedWeight[p] = weight[e];
+        }
+
+        // Compact each row in place, merging duplicate targets and dropping zero weights.
+        int[] seenAt = new int[V]; // Position of each target within the current row.
+        Arrays.fill(seenAt, -1);
+        rowStart = new int[V + 1];
+        int out = 0;
+        for (int u = 0; u < V; u++) {
+            int rowBegin = out;
+            rowStart[u] = rowBegin;
+            for (int p = start[u]; p < start[u + 1]; p++) {
+                int v = sortedTarget[p];
+                if (seenAt[v] >= rowBegin) {
+                    sortedWeight[seenAt[v]] = sortedWeight[p];
+                } else {
+                    seenAt[v] = out;
+                    sortedTarget[out] = v;
+                    sortedWeight[out] = sortedWeight[p];
+                    out++;
+                }
+            }
+            int kept = rowBegin;
+            for (int p = rowBegin; p < out; p++) {
+                seenAt[sortedTarget[p]] = -1;
+                if (sortedWeight[p] != 0) {
+                    sortedTarget[kept] = sortedTarget[p];
+                    sortedWeight[kept] = sortedWeight[p];
+                    kept++;
+                }
+            }
+            out = kept;
+        }
+        rowStart[V] = out;
+        edgeTarget = Arrays.copyOf(sortedTarget, out);
+        edgeWeight = Arrays.copyOf(sortedWeight, out);
+    }
+
     // Method to add an edge to the adjacency matrix.
     private static void addEdge(int u, int v, double weight) {
         if (u < V && v < V) { // Ensure u and v are within bounds
@@ -123,6 +748,14 @@ public class ShortestCycle {
     // Method to find the length of the smallest cycle in the graph.
     private static double SmallestCycle() {
         double smallestCycle = Double.MAX_VALUE; // Initialize the smallest cycle length to the maximum value.
+        if (Metrics.ENABLED) {
+            matrixDegree = new int[V];
+            for (int u = 0; u < V; u++) {
+                for (int v = 0; v < V; v++) {
+                    matrixDegree[u] += graph[u][v] != 0 ? 1 : 0;
+                }
+            }
+        }
 
         // Attempt to find the shortest cycle starting from each vertex.
         for (int i = 0; i < V; i++) {
@@ -155,10 +788,14 @@ public class ShortestCycle {
         shortest_weight[src] = 0; // Distance from the source to itself is always 0.
 
         // Update distances from the source to all other vertices.
+        long relaxed = 0; // Only reported with -metrics; dead code otherwise.
         for (int count = 0; count < V - 1; count++) {
             int u = minDistance(shortest_weight, visited); // Find the vertex with the minimum distance from the source
                                                            // that has not been visited.
             visited[u] = true; // Mark the selected vertex as visited.
+            if (Metrics.ENABLED) {
+                relaxed += matrixDegree[u];
+            }
             for (int v = 0; v < V; v++) {
                 // Update the distance of the adjacent vertices of the selected vertex.
                 if (!visited[v] && graph[u][v] != 0 && shortest_weight[u] != Double.MAX_VALUE
@@ -167,6 +804,10 @@ public class ShortestCycle {
                 }
             }
         }
+        if (Metrics.ENABLED) {
+            Metrics.HEAP_POPS.add(Math.max(0, V - 1)); // The matrix engine settles by linear scan.
+            Metrics.RELAXATIONS.add(relaxed);
+        }
     }
 
     // Method to find the vertex with the minimum distance from the source that has
@@ -182,4 +823,704 @@ public class ShortestCycle {
             }
         return min_index; // Return the index of the vertex with the minimum distance.
     }
+
+    // Method to find the length of the smallest cycle using the CSR arrays. Runs in
+    // O(V * E log V) time and O(V + E) memory.
+    static double SmallestCycleCsr() {
+        double smallestCycle = Double.MAX_VALUE;
+        SearchBuffers buffers = new SearchBuffers(V);
+        for (int i = 0; i < V; i++) {
+            double cycleWeight = dijkstraCsr(i, buffers, null);
+            if (cycleWeight < smallestCycle) {
+                smallestCycle = cycleWeight;
+            }
+        }
+        return smallestCycle == Double.MAX_VALUE ? 0 : smallestCycle;
+    }
+
+    // Method to find the length of the smallest cycle using a fixed pool of worker threads. Workers
+    // claim blocks of source vertices from a shared counter, search them with their own buffers and
+    // publish every improvement through a shared bound that all other workers prune against. The
+    // result is identical to SmallestCycleCsr(): a search only stops once no cycle it could still
+    // find would be shorter than one already found.
+    static double SmallestCycleParallel(int threads) {
+        final int blockSize = 64;
+        SharedBound best = new SharedBound();
+        AtomicInteger nextSource = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] workers = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                workers[t] = pool.submit(() -> {
+                    SearchBuffers buffers = new SearchBuffers(V);
+                    int first;
+                    while ((first = nextSource.getAndAdd(blockSize)) < V) {
+                        int last = Math.min(V, first + blockSize);
+                        for (int i = first; i < last; i++) {
+                            best.offer(dijkstraCsr(i, buffers, best));
+                        }
+                    }
+                });
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Parallel cycle search was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Parallel cycle search failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        double smallestCycle = best.get();
+        return smallestCycle == Double.MAX_VALUE ? 0 : smallestCycle;
+    }
+
+    // Weight domains with a specialized engine. Sums of integer weights are exact in double
+    // arithmetic, so the integer engines give exactly the generic result.
+    enum WeightDomain {
+        UNIT, // Every weight is 1: breadth-first search.
+        SMALL_INTEGER, // Integer weights up to DIAL_MAX_WEIGHT: Dial's bucket queue.
+        REAL // Anything else: Dijkstra with a binary heap.
+    }
+
+    static final int DIAL_MAX_WEIGHT = 1 << 10;
+
+    // Method to classify the CSR edge weights.
+    static WeightDomain detectWeightDomain() {
+        boolean unit = true;
+        for (double weight : edgeWeight) {
+            if (weight != 1) {
+                unit = false;
+                if (weight != Math.rint(weight) || weight > DIAL_MAX_WEIGHT) {
+                    return WeightDomain.REAL;
+                }
+            }
+        }
+        // Dial's algorithm keeps int distances, which a path of V - 1 edges plus the edge closing the
+        // cycle must not overflow.
+        if (!unit && (long) V * (long) maxEdgeWeight() > Integer.MAX_VALUE) {
+            return WeightDomain.REAL;
+        }
+        return unit ? WeightDomain.UNIT : WeightDomain.SMALL_INTEGER;
+    }
+
+    private static double maxEdgeWeight() {
+        double max = 0;
+        for (double weight : edgeWeight) {
+            max = Math.max(max, weight);
+        }
+        return max;
+    }
+
+    // Method to find the girth of a unit-weight graph with one breadth-first search per source in
+    // O(V * E). A search ends at the first edge back into its source, since BFS meets the closing
+    // edges in order of length, or once its level can no longer beat the best cycle so far.
+    static double SmallestCycleBfs() {
+        int[] level = new int[V];
+        Arrays.fill(level, -1);
+        int[] queue = new int[V];
+        int smallestCycle = Integer.MAX_VALUE;
+        long settled = 0; // Counters only reported with -metrics; dead code otherwise.
+        long relaxed = 0;
+        for (int src = 0; src < V; src++) {
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = src;
+            level[src] = 0;
+            search:
+            while (head < tail) {
+                int u = queue[head++];
+                if (level[u] + 1 >= smallestCycle) {
+                    break; // Every cycle still reachable from here is at least level[u] + 1 long.
+                }
+                settled++;
+                relaxed += rowStart[u + 1] - rowStart[u];
+                for (int e = rowStart[u]; e < rowStart[u + 1]; e++) {
+                    int v = edgeTarget[e];
+                    if (v == src) {
+                        smallestCycle = level[u] + 1; // The first closing edge gives the shortest cycle.
+                        break search;
+                    }
+                    if (level[v] < 0) {
+                        level[v] = level[u] + 1;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+            for (int k = 0; k < tail; k++) {
+                level[queue[k]] = -1; // Reset only the vertices this search reached.
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.HEAP_POPS.add(settled);
+            Metrics.RELAXATIONS.add(relaxed);
+        }
+        return smallestCycle == Integer.MAX_VALUE ? 0 : smallestCycle;
+    }
+
+    // Method to find the length of the smallest cycle in a graph with small integer weights using
+    // Dial's algorithm: a circular array of maxWeight + 1 buckets of vertices with equal int
+    // distance replaces the heap, so each settle and decrease-key is O(1). Each search stops once
+    // its current distance can no longer beat the best cycle so far.
+    static double SmallestCycleDial() {
+        int[] weight = new int[edgeWeight.length];
+        for (int e = 0; e < weight.length; e++) {
+            weight[e] = (int) edgeWeight[e];
+        }
+        int bucketCount = (int) maxEdgeWeight() + 1;
+        int[] bucketHead = new int[bucketCount];
+        Arrays.fill(bucketHead, -1);
+        int[] next = new int[V]; // Doubly linked bucket lists threaded through the vertices.
+        int[] prev = new int[V];
+        int[] distance = new int[V];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        int[] touched = new int[V];
+
+        int smallestCycle = Integer.MAX_VALUE;
+        long settled = 0; // Counters only reported with -metrics; dead code otherwise.
+        long relaxed = 0;
+        for (int src = 0; src < V; src++) {
+            int touchedCount = 0;
+            int queued = 1;
+            distance[src] = 0;
+            touched[touchedCount++] = src;
+            next[src] = -1;
+            prev[src] = -1;
+            bucketHead[0] = src;
+
+            int bestCycle = smallestCycle;
+            for (int current = 0; queued > 0 && current < bestCycle; current++) {
+                int bucket = current % bucketCount;
+                while (bucketHead[bucket] >= 0 && current < bestCycle) {
+                    int u = bucketHead[bucket]; // Every vertex in this bucket is at distance current.
+                    bucketHead[bucket] = next[u];
+                    if (next[u] >= 0) {
+                        prev[next[u]] = -1;
+                    }
+                    queued--;
+                    settled++;
+                    relaxed += rowStart[u + 1] - rowStart[u];
+                    for (int e = rowStart[u]; e < rowStart[u + 1]; e++) {
+                        int v = edgeTarget[e];
+                        int candidate = current + weight[e];
+                        if (v == src) {
+                            bestCycle = Math.min(bestCycle, candidate); // An edge u -> src closes a cycle.
+                        } else if (candidate < distance[v]) {
+                            if (distance[v] == Integer.MAX_VALUE) {
+                                touched[touchedCount++] = v;
+                                queued++;
+                            } else { // Unlink v from its old bucket.
+                                if (prev[v] >= 0) {
+                                    next[prev[v]] = next[v];
+                                } else {
+                                    bucketHead[distance[v] % bucketCount] = next[v];
+                                }
+                                if (next[v] >= 0) {
+                                    prev[next[v]] = prev[v];
+                                }
+                            }
+                            distance[v] = candidate;
+                            int target = candidate % bucketCount;
+                            next[v] = bucketHead[target];
+                            prev[v] = -1;
+                            if (next[v] >= 0) {
+                                prev[next[v]] = v;
+                            }
+                            bucketHead[target] = v;
+                        }
+                    }
+                }
+            }
+            smallestCycle = bestCycle;
+            for (int k = 0; k < touchedCount; k++) {
+                distance[touched[k]] = Integer.MAX_VALUE; // Reset only the vertices this search reached.
+            }
+            Arrays.fill(bucketHead, -1);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.HEAP_POPS.add(settled);
+            Metrics.RELAXATIONS.add(relaxed);
+        }
+        return smallestCycle == Integer.MAX_VALUE ? 0 : smallestCycle;
+    }
+
+    // Method to find the length of the smallest cycle with every search bounded by the best cycle
+    // found so far. A cycle through src has to end with an edge into src, so a search can stop as
+    // soon as its frontier distance plus the cheapest edge into src reaches the bound. Sources are
+    // visited in order of their cheapest in-edge plus out-edge so short cycles are found early.
+    static double SmallestCyclePruned() {
+        double[] minIncoming = minIncomingWeights();
+        double[] minOutgoing = new double[V];
+        // Visit order: cheapest entry plus exit first. Each key is computed once and packed with its
+        // vertex into a long, the key as float bits in the high half, which order like the values
+        // since weights are never negative; the order only steers pruning, so rounding is harmless.
+        long[] order = new long[V];
+        for (int i = 0; i < V; i++) {
+            minOutgoing[i] = minOutgoing(i);
+            float key = (float) (minIncoming[i] + minOutgoing[i]);
+            order[i] = (long) Float.floatToIntBits(key) << 32 | i;
+        }
+        Arrays.sort(order);
+
+        relaxations = 0;
+        relaxationsSkipped = 0;
+        double smallestCycle = Double.MAX_VALUE;
+        SearchBuffers buffers = new SearchBuffers(V);
+        for (long entry : order) {
+            int i = (int) entry;
+            // A cycle through i uses an edge into i and an edge out of i, possibly the same self-loop.
+            if (Math.max(minIncoming[i], minOutgoing[i]) >= smallestCycle) {
+                relaxationsSkipped += rowStart[i + 1] - rowStart[i];
+                continue;
+            }
+            double cycleWeight = dijkstraPruned(i, buffers, minIncoming[i], smallestCycle);
+            if (cycleWeight < smallestCycle) {
+                smallestCycle = cycleWeight;
+            }
+        }
+        return smallestCycle == Double.MAX_VALUE ? 0 : smallestCycle;
+    }
+
+    // Dijkstra's algorithm from src that stops once no cycle through src can be shorter than bound.
+    // Relaxations that cannot lead to such a cycle are not queued, and the out-edges of vertices
+    // still queued when the search stops are counted as skipped as well.
+    static double dijkstraPruned(int src, SearchBuffers buffers, double minIncoming, double bound) {
+        double[] shortest_weight = buffers.shortest_weight;
+        IndexedMinHeap heap = buffers.heap;
+        buffers.reset();
+        buffers.touch(src, 0);
+        heap.push(src);
+
+        double bestCycle = bound;
+        long popped = 0; // Counters only reported with -metrics; dead code otherwise.
+        long relaxed = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            popped++;
+            double du = shortest_weight[u];
+            if (du + minIncoming >= bestCycle) {
+                // Every vertex still queued is skipped too; count its edges without draining the heap,
+                // which the next search clears.
+                relaxationsSkipped += rowStart[u + 1] - rowStart[u];
+                for (int slot = 0; slot < heap.size(); slot++) {
+                    int v = heap.at(slot);
+                    relaxationsSkipped += rowStart[v + 1] - rowStart[v];
+                }
+                break;
+            }
+            relaxed += rowStart[u + 1] - rowStart[u];
+            for (int e = rowStart[u]; e < rowStart[u + 1]; e++) {
+                int v = edgeTarget[e];
+                double candidate = du + edgeWeight[e];
+                if (v == src) {
+                    relaxations++;
+                    if (candidate < bestCycle) {
+                        bestCycle = candidate; // An edge u -> src closes a cycle.
+                    }
+                } else if (candidate + minIncoming >= bestCycle) {
+                    relaxationsSkipped++;
+                } else {
+                    relaxations++;
+                    if (candidate < shortest_weight[v]) {
+                        if (shortest_weight[v] == Double.MAX_VALUE) {
+                            buffers.touch(v, candidate);
+                            heap.push(v);
+                        } else {
+                            shortest_weight[v] = candidate;
+                            heap.decreaseKey(v);
+                        }
+                    }
+                }
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.HEAP_POPS.add(popped);
+            Metrics.RELAXATIONS.add(relaxed);
+        }
+        return bestCycle < bound ? bestCycle : Double.MAX_VALUE;
+    }
+
+    // Method to find the cheapest edge entering each vertex, or Double.MAX_VALUE if there is none.
+    static double[] minIncomingWeights() {
+        double[] minIncoming = new double[V];
+        Arrays.fill(minIncoming, Double.MAX_VALUE);
+        for (int e = 0; e < edgeTarget.length; e++) {
+            minIncoming[edgeTarget[e]] = Math.min(minIncoming[edgeTarget[e]], edgeWeight[e]);
+        }
+        return minIncoming;
+    }
+
+    // Method to find the cheapest edge leaving vertex u, or Double.MAX_VALUE if there is none.
+    private static double minOutgoing(int u) {
+        double min = Double.MAX_VALUE;
+        for (int e = rowStart[u]; e < rowStart[u + 1]; e++) {
+            min = Math.min(min, edgeWeight[e]);
+        }
+        return min;
+    }
+
+    // Dijkstra's algorithm over the CSR arrays with an indexed binary heap. Cycles through src are
+    // closed as soon as an edge back into src is relaxed, so no reverse adjacency is needed.
+    // Returns the length of the shortest cycle through src, or Double.MAX_VALUE if there is none.
+    // When a shared bound is given, the search stops once the frontier reaches it, and the
+    // returned value is then only exact if it is below that bound.
+    static double dijkstraCsr(int src, SearchBuffers buffers, SharedBound bound) {
+        double[] shortest_weight = buffers.shortest_weight;
+        IndexedMinHeap heap = buffers.heap;
+        buffers.reset();
+        buffers.touch(src, 0);
+        heap.push(src);
+
+        double bestCycle = Double.MAX_VALUE;
+        long popped = 0; // Counters only reported with -metrics; dead code otherwise.
+        long relaxed = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.pop();
+            popped++;
+            double du = shortest_weight[u];
+            if (du >= bestCycle || (bound != null && du >= bound.get())) {
+                break; // Every cycle still reachable from here is at least du long.
+            }
+            relaxed += rowStart[u + 1] - rowStart[u];
+            for (int e = rowStart[u]; e < rowStart[u + 1]; e++) {
+                int v = edgeTarget[e];
+                double candidate = du + edgeWeight[e];
+                if (v == src) {
+                    if (candidate < bestCycle) {
+                        bestCycle = candidate; // An edge u -> src closes a cycle.
+                    }
+                } else if (candidate < shortest_weight[v]) {
+                    if (shortest_weight[v] == Double.MAX_VALUE) {
+                        buffers.touch(v, candidate);
+                        heap.push(v);
+                    } else {
+                        shortest_weight[v] = candidate;
+                        heap.decreaseKey(v);
+                    }
+                }
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.HEAP_POPS.add(popped);
+            Metrics.RELAXATIONS.add(relaxed);
+        }
+        return bestCycle;
+    }
+
+    // Shortest cycle maintained under edge insertions and weight decreases. A new or cheaper edge
+    // u -> v can only improve the answer through a cycle that uses it, so each update runs one
+    // Dijkstra from v back to u that is capped at the current best minus the new weight. The work
+    // is bounded by the neighborhood of v within that radius rather than by the whole graph.
+    // Weight increases and removals (weight 0) cannot be handled locally and trigger a full
+    // recomputation. Built from the loaded CSR arrays, which it copies into growable adjacency lists.
+    static final class IncrementalCycle {
+        private int vertexCount;
+        private int[][] targets;
+        private double[][] weights;
+        private int[] degree;
+        private SearchBuffers buffers;
+        private int[] parent;
+
+        private double best = Double.MAX_VALUE;
+        private int[] witness = new int[0];
+
+        IncrementalCycle() {
+            vertexCount = V;
+            targets = new int[V][];
+            weights = new double[V][];
+            degree = new int[V];
+            for (int u = 0; u < V; u++) {
+                targets[u] = Arrays.copyOfRange(edgeTarget, rowStart[u], rowStart[u + 1]);
+                weights[u] = Arrays.copyOfRange(edgeWeight, rowStart[u], rowStart[u + 1]);
+                degree[u] = targets[u].length;
+            }
+            buffers = new SearchBuffers(V);
+            parent = new int[V];
+            recompute();
+        }
+
+        // Length of the current shortest cycle, or 0 if the graph has no cycle.
+        double length() {
+            return best == Double.MAX_VALUE ? 0 : best;
+        }
+
+        // Vertices of the current shortest cycle in order, or an empty array if there is none.
+        int[] witness() {
+            return witness.clone();
+        }
+
+        // Sets the weight of edge u -> v, adding the edge or vertices as needed.
+        void addEdge(int u, int v, double weight) {
+            if (u < 0 || v < 0 || !(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Invalid edge " + u + " -> " + v + " (" + weight + ")");
+            }
+            ensureVertex(Math.max(u, v));
+            int slot = -1;
+            for (int k = 0; k < degree[u]; k++) {
+                if (targets[u][k] == v) {
+                    slot = k;
+                    break;
+                }
+            }
+            double previous = slot < 0 ? 0 : weights[u][slot];
+            if (weight == previous) {
+                return;
+            }
+            if (weight == 0) { // Removal: drop the edge, keeping the list compact.
+                degree[u]--;
+                targets[u][slot] = targets[u][degree[u]];
+                weights[u][slot] = weights[u][degree[u]];
+                recompute();
+                return;
+            }
+            if (slot < 0) {
+                if (degree[u] == targets[u].length) {
+                    targets[u] = Arrays.copyOf(targets[u], Math.max(4, degree[u] * 2));
+                    weights[u] = Arrays.copyOf(weights[u], targets[u].length);
+                }
+                slot = degree[u]++;
+                targets[u][slot] = v;
+            }
+            weights[u][slot] = weight;
+            if (previous != 0 && weight > previous) {
+                recompute();
+            } else if (u == v) {
+                offer(weight, new int[] { u });
+            } else {
+                closeCycle(u, v, weight, best);
+            }
+        }
+
+        // Recomputes the shortest cycle from scratch, each search capped at the best so far.
+        private void recompute() {
+            best = Double.MAX_VALUE;
+            witness = new int[0];
+            for (int src = 0; src < vertexCount; src++) {
+                closeCycle(src, -1, 0, best);
+            }
+        }
+
+        // Dijkstra from src looking for cycles through src shorter than cap. With first >= 0 the
+        // cycle is forced to start with the edge src -> first of the given weight; otherwise every
+        // out-edge of src is allowed. Records any improvement in best and witness.
+        private void closeCycle(int src, int first, double firstWeight, double cap) {
+            double[] shortest_weight = buffers.shortest_weight;
+            IndexedMinHeap heap = buffers.heap;
+            buffers.reset();
+            int start = first >= 0 ? first : src;
+            buffers.touch(start, first >= 0 ? firstWeight : 0);
+            parent[start] = src;
+            heap.push(start);
+
+            double bestCycle = cap;
+            int closing = -1;
+            while (!heap.isEmpty()) {
+                int x = heap.pop();
+                double dx = shortest_weight[x];
+                if (dx >= bestCycle) {
+                    break; // Every cycle still reachable from here is at least dx long.
+                }
+                for (int k = 0; k < degree[x]; k++) {
+                    int y = targets[x][k];
+                    double candidate = dx + weights[x][k];
+                    if (y == src) {
+                        if (candidate < bestCycle) {
+                            bestCycle = candidate; // An edge x -> src closes a cycle.
+                            closing = x;
+                        }
+                    } else if (candidate < shortest_weight[y]) {
+                        parent[y] = x;
+                        if (shortest_weight[y] == Double.MAX_VALUE) {
+                            buffers.touch(y, candidate);
+                            heap.push(y);
+                        } else {
+                            shortest_weight[y] = candidate;
+                            heap.decreaseKey(y);
+                        }
+                    }
+                }
+            }
+            if (closing < 0) {
+                return;
+            }
+            int length = 1;
+            for (int x = closing; x != src; x = parent[x]) {
+                length++;
+            }
+            int[] cycle = new int[length];
+            for (int x = closing, k = length - 1; x != src; x = parent[x], k--) {
+                cycle[k] = x;
+            }
+            cycle[0] = src;
+            offer(bestCycle, cycle);
+        }
+
+        private void offer(double cycleWeight, int[] cycle) {
+            if (cycleWeight < best) {
+                best = cycleWeight;
+                witness = cycle;
+            }
+        }
+
+        private void ensureVertex(int u) {
+            if (u < vertexCount) {
+                return;
+            }
+            int newCount = Math.max(u + 1, vertexCount * 2);
+            targets = Arrays.copyOf(targets, newCount);
+            weights = Arrays.copyOf(weights, newCount);
+            for (int x = vertexCount; x < newCount; x++) {
+                targets[x] = new int[0];
+                weights[x] = new double[0];
+            }
+            degree = Arrays.copyOf(degree, newCount);
+            parent = Arrays.copyOf(parent, newCount);
+            buffers = new SearchBuffers(newCount);
+            vertexCount = newCount;
+        }
+    }
+
+    // Best cycle length found so far, shared between worker threads. Non-negative doubles order
+    // the same way as their raw bit patterns, so the minimum can be kept in a single AtomicLong.
+    static final class SharedBound {
+        private final AtomicLong bits = new AtomicLong(Double.doubleToLongBits(Double.MAX_VALUE));
+
+        double get() {
+            return Double.longBitsToDouble(bits.get());
+        }
+
+        void offer(double cycleWeight) {
+            long candidate = Double.doubleToLongBits(cycleWeight);
+            if (candidate < bits.get()) {
+                bits.accumulateAndGet(candidate, Math::min);
+            }
+        }
+    }
+
+    // Per-search scratch space. Only the vertices touched by the previous search are reset, so a
+    // search that stays local does not pay O(V) to clear its buffers.
+    static final class SearchBuffers {
+        final double[] shortest_weight;
+        final IndexedMinHeap heap;
+        private final int[] touched;
+        private int touchedCount;
+
+        SearchBuffers(int vertexCount) {
+            shortest_weight = new double[vertexCount];
+            Arrays.fill(shortest_weight, Double.MAX_VALUE);
+            heap = new IndexedMinHeap(shortest_weight);
+            touched = new int[vertexCount];
+        }
+
+        void touch(int v, double distance) {
+            shortest_weight[v] = distance;
+            touched[touchedCount++] = v;
+        }
+
+        void reset() {
+            for (int k = 0; k < touchedCount; k++) {
+                shortest_weight[touched[k]] = Double.MAX_VALUE;
+            }
+            touchedCount = 0;
+            heap.clear();
+        }
+    }
+
+    // Binary min-heap of vertex ids keyed by an external distance array. position[v] is the slot
+    // of v in the heap, or -1 when v is not queued, which makes decrease-key O(log V).
+    static final class IndexedMinHeap {
+        private final double[] key;
+        private final int[] heap;
+        private final int[] position;
+        private int size;
+
+        IndexedMinHeap(double[] key) {
+            this.key = key;
+            this.heap = new int[key.length];
+            this.position = new int[key.length];
+            Arrays.fill(position, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        // The vertex in a slot of the backing array, in no particular order.
+        int at(int slot) {
+            return heap[slot];
+        }
+
+        void push(int v) {
+            heap[size] = v;
+            position[v] = size;
+            siftUp(size++);
+        }
+
+        // Restores the heap order after key[v] was lowered.
+        void decreaseKey(int v) {
+            siftUp(position[v]);
+        }
+
+        int pop() {
+            int top = heap[0];
+            position[top] = -1;
+            if (--size > 0) {
+                heap[0] = heap[size];
+                position[heap[0]] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        void clear() {
+            for (int k = 0; k < size; k++) {
+                position[heap[k]] = -1;
+            }
+            size = 0;
+        }
+
+        private void siftUp(int slot) {
+            int v = heap[slot];
+            double k = key[v];
+            while (slot > 0) {
+                int parent = (slot - 1) >>> 1;
+                int p = heap[parent];
+                if (key[p] <= k) {
+                    break;
+                }
+                heap[slot] = p;
+                position[p] = slot;
+                slot = parent;
+            }
+            heap[slot] = v;
+            position[v] = slot;
+        }
+
+        private void siftDown(int slot) {
+            int v = heap[slot];
+            double k = key[v];
+            int half = size >>> 1;
+            while (slot < half) {
+                int child = 2 * slot + 1;
+                if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) {
+                    child++;
+                }
+                int c = heap[child];
+                if (k <= key[c]) {
+                    break;
+                }
+                heap[slot] = c;
+                position[c] = slot;
+                slot = child;
+            }
+            heap[slot] = v;
+            position[v] = slot;
+        }
+    }
 }
@@ -0,0 +1,100 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+// Synthetic inputs that scale with the benchmark parameters. Every generator is seeded, so a given
+// parameter combination always produces the same input.
+final class Inputs {
+    private Inputs() {
+    }
+
+    // A word bank of bankSize distinct lowercase words of 3 to 8 letters, and a target of at least
+    // targetLength letters made by concatenating random bank words, so that it has a construction.
+    static String[] wordBank(int bankSize, long seed) {
+        Random random = new Random(seed);
+        Set<String> words = new LinkedHashSet<>();
+        // Every single letter as well, so that most positions have several matching words.
+        for (char c = 'a'; c <= 'z' && words.size() < bankSize; c++) {
+            words.add(String.valueOf(c));
+        }
+        while (words.size() < bankSize) {
+            int length = 3 + random.nextInt(6);
+            StringBuilder word = new StringBuilder(length);
+            for (int k = 0; k < length; k++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    static String target(String[] wordBank, int targetLength, long seed) {
+        Random random = new Random(seed);
+        StringBuilder target = new StringBuilder(targetLength + 8);
+        while (target.length() < targetLength) {
+            target.append(wordBank[random.nextInt(wordBank.length)]);
+        }
+        return target.toString();
+    }
+
+    // A directed graph on the given number of vertices in which each ordered pair (u, v), u != v, is
+    // an edge with probability density, weighted uniformly from 1 to 100. Returned as {from, to} and
+    // a parallel weight array, in the edge-list form ShortestCycle.buildCsr() takes.
+    static int[][] edges(int vertices, double density, long seed, double[][] weightOut) {
+        Random random = new Random(seed);
+        int capacity = 16;
+        int[] from = new int[capacity];
+        int[] to = new int[capacity];
+        double[] weight = new double[capacity];
+        int count = 0;
+        for (int u = 0; u < vertices; u++) {
+            for (int v = 0; v < vertices; v++) {
+                if (u == v || random.nextDouble() >= density) {
+                    continue;
+                }
+                if (count == capacity) {
+                    capacity *= 2;
+                    from = Arrays.copyOf(from, capacity);
+                    to = Arrays.copyOf(to, capacity);
+                    weight = Arrays.copyOf(weight, capacity);
+                }
+                from[count] = u;
+                to[count] = v;
+                weight[count] = 1 + random.nextInt(100);
+                count++;
+            }
+        }
+        weightOut[0] = Arrays.copyOf(weight, count);
+        return new int[][] { Arrays.copyOf(from, count), Arrays.copyOf(to, count) };
+    }
+
+    // A sorted array of size values in which about duplicateRatio of the elements repeat an earlier
+    // value: size * (1 - duplicateRatio) distinct values, at least one, drawn uniformly.
+    static int[] sortedArray(int size, double duplicateRatio, long seed) {
+        Random random = new Random(seed);
+        int distinct = distinctValues(size, duplicateRatio);
+        int[] values = new int[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextInt(distinct);
+        }
+        Arrays.sort(values);
+        return values;
+    }
+
+    static int distinctValues(int size, double duplicateRatio) {
+        return Math.max(1, (int) Math.round(size * (1 - duplicateRatio)));
+    }
+
+    // Queries spread over the value range, a few of them just outside it.
+    static int[] queries(int count, int distinct, long seed) {
+        Random random = new Random(seed);
+        int[] queries = new int[count];
+        for (int i = 0; i < count; i++) {
+            queries[i] = random.nextInt(distinct + 2) - 1;
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Constructions of a target of targetLength letters from a bank of bankSize words (see
+// Inputs.wordBank()). combine() materializes every construction; countWays() only counts them.
+// The word trie is built once per trial, as the batch mode does.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NoOfWaysBenchmark {
+    @Param({ "16", "32", "64" })
+    int targetLength;
+
+    @Param({ "100", "10000" })
+    int bankSize;
+
+    private String target;
+    private Object wordTrie;
+
+    @Setup
+    public void setUp() throws Throwable {
+        String[] wordBank = Inputs.wordBank(bankSize, 1);
+        target = Inputs.target(wordBank, targetLength, 2);
+        wordTrie = (Object) Targets.WAYS_NEW_TRIE.invokeExact(wordBank);
+    }
+
+    @Benchmark
+    public List<?> combine() throws Throwable {
+        return (List<?>) Targets.WAYS_COMBINE.invokeExact(target, wordTrie);
+    }
+
+    @Benchmark
+    public BigInteger countWays() throws Throwable {
+        return (BigInteger) Targets.WAYS_COUNT.invokeExact(target, wordTrie, 0L);
+    }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Occurrence counts in a sorted array of arraySize elements of which about duplicateRatio repeat an
+// earlier value (see Inputs.sortedArray()), for a fixed batch of queries. Scores are per query:
+// findtheOccurence.rec() against the bound searches of count().
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OccurrenceBenchmark {
+    static final int QUERIES = 1024;
+
+    @Param({ "1000", "1000000" })
+    int arraySize;
+
+    @Param({ "0.0", "0.9", "0.999" })
+    double duplicateRatio;
+
+    private int[] sorted;
+    private int[] queries;
+
+    @Setup
+    public void setUp() {
+        sorted = Inputs.sortedArray(arraySize, duplicateRatio, 4);
+        queries = Inputs.queries(QUERIES, Inputs.distinctValues(arraySize, duplicateRatio), 5);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int rec() throws Throwable {
+        int total = 0;
+        for (int query : queries) {
+            total += (int) Targets.OCCURRENCE_REC.invokeExact(sorted, 0, sorted.length - 1, query);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int count() throws Throwable {
+        int total = 0;
+        for (int query : queries) {
+            total += (int) Targets.OCCURRENCE_COUNT.invokeExact(sorted, query);
+        }
+        return total;
+    }
+}
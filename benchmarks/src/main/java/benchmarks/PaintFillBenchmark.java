@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Flood fill of the region at (0, 0) of a size x size grid shaped by PaintFill.makeShape(): a solid
+// block, a checkerboard (a single-cell region) or a one-cell-wide spiral corridor, which is the
+// deepest recursion for dfs. Each invocation fills the region with the other of two colours, so the
+// grid never needs resetting and every invocation does the same work.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xss1g" }) // dfs recurses once per cell of the region.
+public class PaintFillBenchmark {
+    @Param({ "64", "256", "1024" })
+    int size;
+
+    @Param({ "solid", "checkerboard", "spiral" })
+    String shape;
+
+    private ArrayList<ArrayList<Character>> matrix;
+    private byte[] grid;
+    private char current;
+
+    @Setup
+    public void setUp() throws Throwable {
+        grid = (byte[]) Targets.PAINT_MAKE_SHAPE.invokeExact(shape, size);
+        matrix = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ArrayList<Character> row = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                row.add((char) grid[i * size + j]);
+            }
+            matrix.add(row);
+        }
+        current = 'W';
+        // Both fills mark the cells they update, as PaintFill.main arranges before filling.
+        Targets.PAINT_UPDATED_CELLS.set(null, new long[(size * size + 63) / 64]);
+        Targets.PAINT_UPDATED_COLUMNS.setInt(null, size);
+    }
+
+    private char next() {
+        char target = current;
+        current = target == 'W' ? 'R' : 'W';
+        return target;
+    }
+
+    @Benchmark
+    public ArrayList<ArrayList<Character>> dfs() throws Throwable {
+        char target = next();
+        Targets.PAINT_DFS.invokeExact(matrix, 0, 0, target, current);
+        return matrix;
+    }
+
+    @Benchmark
+    public int scanline() throws Throwable {
+        char target = next();
+        return (int) Targets.PAINT_SCANLINE.invokeExact(grid, size, size, 0, 0, (byte) target, (byte) current);
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Shortest cycle of a random directed graph with the given vertex count and edge density (see
+// Inputs.edges()), through the original adjacency-matrix engine, a single matrix Dijkstra and the CSR
+// heap engine. ShortestCycle keeps the graph in static fields, so each trial loads its graph into
+// both representations before measuring.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShortestCycleBenchmark {
+    @Param({ "100", "500" })
+    int vertices;
+
+    @Param({ "0.01", "0.1" })
+    double density;
+
+    private double[] distances;
+    private boolean[] visited;
+
+    @Setup
+    public void setUp() throws Throwable {
+        double[][] weight = new double[1][];
+        int[][] edges = Inputs.edges(vertices, density, 3, weight);
+        double[][] graph = new double[vertices][vertices];
+        for (int e = 0; e < weight[0].length; e++) {
+            graph[edges[0][e]][edges[1][e]] = weight[0][e];
+        }
+        Targets.CYCLE_VERTICES.setInt(null, vertices);
+        Targets.CYCLE_GRAPH.set(null, graph);
+        Targets.CYCLE_BUILD_CSR.invokeExact(edges[0], edges[1], weight[0], weight[0].length);
+        distances = new double[vertices];
+        visited = new boolean[vertices];
+    }
+
+    @Benchmark
+    public double smallestCycleMatrix() throws Throwable {
+        return (double) Targets.CYCLE_MATRIX.invokeExact();
+    }
+
+    @Benchmark
+    public double[] dijkstraMatrix() throws Throwable {
+        Targets.CYCLE_DIJKSTRA.invokeExact(0, distances, visited);
+        return distances;
+    }
+
+    @Benchmark
+    public double smallestCycleCsr() throws Throwable {
+        return (double) Targets.CYCLE_CSR.invokeExact();
+    }
+}
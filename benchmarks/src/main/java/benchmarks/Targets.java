@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+// Entry points of the programs under test. The programs live in the unnamed package, which code in a
+// named package cannot refer to, and JMH needs its benchmarks in a named package; so the methods are
+// reached through method handles. Held in static final fields, the handles are constants to the JIT
+// and invokeExact through them compiles to a direct call.
+final class Targets {
+    private Targets() {
+    }
+
+    // PaintFill
+    static final MethodHandle PAINT_DFS;          // (ArrayList<ArrayList<Character>>, int, int, char, char) void
+    static final MethodHandle PAINT_SCANLINE;     // (byte[], int, int, int, int, byte, byte) int
+    static final MethodHandle PAINT_MAKE_SHAPE;   // (String, int) byte[]
+    static final Field PAINT_UPDATED_CELLS;
+    static final Field PAINT_UPDATED_COLUMNS;
+
+    // NoOfWays; the word trie is passed around as Object.
+    static final MethodHandle WAYS_NEW_TRIE;      // (String[]) Object
+    static final MethodHandle WAYS_COMBINE;       // (String, Object) List
+    static final MethodHandle WAYS_COUNT;         // (String, Object, long) BigInteger
+
+    // ShortestCycle
+    static final MethodHandle CYCLE_MATRIX;       // () double
+    static final MethodHandle CYCLE_CSR;          // () double
+    static final MethodHandle CYCLE_DIJKSTRA;     // (int, double[], boolean[]) void
+    static final MethodHandle CYCLE_BUILD_CSR;    // (int[], int[], double[], int) void
+    static final Field CYCLE_VERTICES;
+    static final Field CYCLE_GRAPH;
+
+    // findtheOccurence
+    static final MethodHandle OCCURRENCE_REC;     // (int[], int, int, int) int
+    static final MethodHandle OCCURRENCE_COUNT;   // (int[], int) int
+
+    static {
+        try {
+            Class<?> paintFill = Class.forName("PaintFill");
+            PAINT_DFS = method(paintFill, "dfs", void.class, ArrayList.class, int.class, int.class, char.class,
+                    char.class);
+            PAINT_SCANLINE = method(paintFill, "scanlineFill", int.class, byte[].class, int.class, int.class,
+                    int.class, int.class, byte.class, byte.class);
+            PAINT_MAKE_SHAPE = method(paintFill, "makeShape", byte[].class, String.class, int.class);
+            PAINT_UPDATED_CELLS = field(paintFill, "updatedCells");
+            PAINT_UPDATED_COLUMNS = field(paintFill, "updatedColumns");
+
+            Class<?> noOfWays = Class.forName("NoOfWays");
+            Class<?> wordTrie = Class.forName("NoOfWays$WordTrie");
+            WAYS_NEW_TRIE = lookup(noOfWays).findConstructor(wordTrie, MethodType.methodType(void.class,
+                    String[].class)).asType(MethodType.methodType(Object.class, String[].class));
+            WAYS_COMBINE = method(noOfWays, "combine", List.class, String.class, wordTrie)
+                    .asType(MethodType.methodType(List.class, String.class, Object.class));
+            WAYS_COUNT = method(noOfWays, "countWays", java.math.BigInteger.class, String.class, wordTrie, long.class)
+                    .asType(MethodType.methodType(java.math.BigInteger.class, String.class, Object.class, long.class));
+
+            Class<?> shortestCycle = Class.forName("ShortestCycle");
+            CYCLE_MATRIX = method(shortestCycle, "SmallestCycle", double.class);
+            CYCLE_CSR = method(shortestCycle, "SmallestCycleCsr", double.class);
+            CYCLE_DIJKSTRA = method(shortestCycle, "dijkstra", void.class, int.class, double[].class, boolean[].class);
+            CYCLE_BUILD_CSR = method(shortestCycle, "buildCsr", void.class, int[].class, int[].class,
+                    double[].class, int.class);
+            CYCLE_VERTICES = field(shortestCycle, "V");
+            CYCLE_GRAPH = field(shortestCycle, "graph");
+
+            Class<?> occurrence = Class.forName("findtheOccurence");
+            OCCURRENCE_REC = method(occurrence, "rec", int.class, int[].class, int.class, int.class, int.class);
+            OCCURRENCE_COUNT = method(occurrence, "count", int.class, int[].class, int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> owner) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters)
+            throws ReflectiveOperationException {
+        return lookup(owner).findStatic(owner, name, MethodType.methodType(returnType, parameters));
+    }
+
+    private static Field field(Class<?> owner, String name) throws NoSuchFieldException {
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+}